@@ -0,0 +1,63 @@
+package vocoder.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The effects added after a dilatation ( echo, multiEcho, reverb ) on the same Input, for each signal and length. They
+ * do not use freqScale, so they are not run once per freqScale like StageBenchmark.
+ *
+ * @apiNote Same counters as StageBenchmark. echo uses Kernels, it is run with both kernels ( Simd ).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class EffectBenchmark {
+
+    private double[] impulse;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Half a second of decreasing noise, like a small room
+        Random random = new Random(42);
+        impulse = new double[Stages.SAMPLE_RATE / 2];
+        for (int i = 0; i < impulse.length; i++) {
+            impulse[i] = 0.05 * random.nextGaussian() * Math.exp(-i / 4000.0);
+        }
+        impulse[0] = 1;
+    }
+
+    @Benchmark
+    public double[] echo(Input input, Simd simd, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.echo(input.samples, 100, 0.7);
+    }
+
+    @Benchmark
+    public double[] multiEcho(Input input, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.multiEcho(input.samples, new double[] { 31.7, 43.1, 57.9 }, new double[] { 0.3, 0.3, 0.3 },
+                new double[][] { { 0, 0.4, 0 }, { 0, 0, 0.4 }, { 0.4, 0, 0 } });
+    }
+
+    @Benchmark
+    public double[] reverb(Input input, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.reverb(input.samples, impulse, 0.3);
+    }
+}
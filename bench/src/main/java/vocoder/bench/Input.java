@@ -0,0 +1,64 @@
+package vocoder.bench;
+
+import java.io.File;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The input of the benchmarks, for each signal and length
+ */
+@State(Scope.Benchmark)
+public class Input {
+
+    private static final String WAV = "linformatique.wav";
+
+    /** sine : 440 Hz, noise : white noise, wav : src/linformatique.wav repeated or cut to the length */
+    @Param({ "sine", "noise", "wav" })
+    public String signal;
+
+    @Param({ "44100", "441000" })
+    public int length;
+
+    double[] samples;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        samples = new double[length];
+        Random random = new Random(42);
+        switch (signal) {
+            case "sine":
+                for (int i = 0; i < length; i++) {
+                    samples[i] = 0.5 * Math.sin(2 * Math.PI * 440 * i / Stages.SAMPLE_RATE);
+                }
+                break;
+            case "noise":
+                for (int i = 0; i < length; i++) {
+                    samples[i] = 0.3 * random.nextGaussian();
+                }
+                break;
+            case "wav":
+                double[] wav = Stages.read(findWav());
+                for (int i = 0; i < length; i++) {
+                    samples[i] = wav[i % wav.length];
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown signal " + signal);
+        }
+    }
+
+    // The benchmarks are run from bench/ or from the root of the project
+    private static String findWav() {
+        for (String path : new String[] { "../src/" + WAV, "src/" + WAV }) {
+            if (new File(path).isFile()) {
+                return path;
+            }
+        }
+        throw new IllegalStateException(WAV + " not found, run the benchmarks from bench/ or from the project");
+    }
+}
@@ -0,0 +1,67 @@
+package vocoder.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The dilatations that can run on a ForkJoinPool ( simple and over, see FrameTask ) for each number of threads, to
+ * see how they scale. threads = 1 is the serial version, without pool.
+ *
+ * @apiNote The pool is made with the number of threads asked even if there are fewer cores, compare with nproc.
+ * Restrict the run with -p threads=1,32 on a big machine. Same counters as StageBenchmark, vocodeSimpleOver is run
+ * with both kernels ( Simd ).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class ParallelBenchmark {
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    @Param({ "0.7", "1.3" })
+    public double freqScale;
+
+    private ForkJoinPool pool; // null for threads = 1
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public double[] vocodeSimple(Input input, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.vocodeSimple(input.samples, freqScale, pool);
+    }
+
+    @Benchmark
+    public double[] vocodeSimpleOver(Input input, Simd simd, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.vocodeSimpleOver(input.samples, freqScale, pool);
+    }
+}
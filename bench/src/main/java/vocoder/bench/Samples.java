@@ -0,0 +1,21 @@
+package vocoder.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Input samples processed, reported by JMH as a rate
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class Samples {
+    public long samples;
+
+    @Setup(Level.Iteration)
+    public void clean() {
+        samples = 0;
+    }
+}
@@ -0,0 +1,28 @@
+package vocoder.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The kernels used by the vocoder ( Kernels.setSimd ), only the benchmarks whose stages use Kernels take this state so
+ * the others are not run twice for the same numbers
+ */
+@State(Scope.Benchmark)
+public class Simd {
+
+    /** false : the scalar loops, true : the Vector API ( SimdKernels ) */
+    @Param({ "false", "true" })
+    public boolean simd;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        if (simd && !Stages.isSimdAvailable()) {
+            throw new IllegalStateException("the SIMD kernels are not available, run with --add-modules "
+                    + "jdk.incubator.vector");
+        }
+        Stages.setSimd(simd);
+    }
+}
@@ -0,0 +1,66 @@
+package vocoder.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stages of Pauvocoder that depend on freqScale ( resample and the dilatations ) on the same Input, for each
+ * freqScale, signal and length ( the stages are called through Stages ). The stages that use Kernels are also run with
+ * the scalar and the SIMD kernels ( Simd ). The effects are in EffectBenchmark, the fork/join dilatations in
+ * ParallelBenchmark.
+ *
+ * @apiNote Besides the operations per second, the "samples" counter gives the input samples processed per second,
+ * comparable between lengths ( 44100 samples/s is real time ). Run through BenchmarkMain the GC profiler is on, its
+ * gc.alloc.rate.norm is the number of bytes allocated by one call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class StageBenchmark {
+
+    @Param({ "0.7", "1.3" })
+    public double freqScale;
+
+    @Benchmark
+    public double[] resample(Input input, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.resample(input.samples, freqScale);
+    }
+
+    @Benchmark
+    public double[] vocodeSimple(Input input, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.vocodeSimple(input.samples, freqScale);
+    }
+
+    @Benchmark
+    public double[] vocodeSimpleOver(Input input, Simd simd, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.vocodeSimpleOver(input.samples, freqScale);
+    }
+
+    @Benchmark
+    public double[] vocodeSimpleOverCross(Input input, Simd simd, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.vocodeSimpleOverCross(input.samples, freqScale);
+    }
+
+    @Benchmark
+    public double[] vocodePhase(Input input, Samples samples) throws Throwable {
+        samples.samples += input.length;
+        return Stages.vocodePhase(input.samples, freqScale);
+    }
+}
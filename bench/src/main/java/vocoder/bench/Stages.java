@@ -0,0 +1,107 @@
+package vocoder.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The Pauvocoder functions seen from the benchmarks. The project is in the default package, which can not be imported,
+ * and JMH refuses benchmarks in the default package, so they are called through method handles. The handles are
+ * static final, the JIT inlines them like direct calls.
+ */
+final class Stages {
+
+    static final int SAMPLE_RATE = 44100;
+
+    private static final MethodHandle SET_SIMD = find("Kernels", "setSimd", void.class, boolean.class);
+    private static final MethodHandle IS_SIMD_AVAILABLE = find("Kernels", "isSimdAvailable", boolean.class);
+    private static final MethodHandle READ = find("StdAudio", "read", double[].class, String.class);
+    private static final MethodHandle RESAMPLE = find("Pauvocoder", "resample", double[].class, double[].class,
+            double.class);
+    private static final MethodHandle VOCODE_SIMPLE = find("Pauvocoder", "vocodeSimple", double[].class,
+            double[].class, double.class);
+    private static final MethodHandle VOCODE_SIMPLE_OVER = find("Pauvocoder", "vocodeSimpleOver", double[].class,
+            double[].class, double.class);
+    private static final MethodHandle VOCODE_SIMPLE_POOL = find("Pauvocoder", "vocodeSimple", double[].class,
+            double[].class, double.class, ForkJoinPool.class);
+    private static final MethodHandle VOCODE_SIMPLE_OVER_POOL = find("Pauvocoder", "vocodeSimpleOver", double[].class,
+            double[].class, double.class, ForkJoinPool.class);
+    private static final MethodHandle VOCODE_SIMPLE_OVER_CROSS = find("Pauvocoder", "vocodeSimpleOverCross",
+            double[].class, double[].class, double.class);
+    private static final MethodHandle VOCODE_PHASE = find("Pauvocoder", "vocodePhase", double[].class,
+            double[].class, double.class);
+    private static final MethodHandle ECHO = find("Pauvocoder", "echo", double[].class, double[].class,
+            double.class, double.class);
+    private static final MethodHandle MULTI_ECHO = find("Pauvocoder", "multiEcho", double[].class, double[].class,
+            double[].class, double[].class, double[][].class);
+    private static final MethodHandle REVERB = find("Pauvocoder", "reverb", double[].class, double[].class,
+            double[].class, double.class);
+
+    private Stages() {
+        // can not instantiate
+    }
+
+    private static MethodHandle find(String className, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup().findStatic(Class.forName(className), name,
+                    MethodType.methodType(returnType, parameters));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static void setSimd(boolean simd) throws Throwable {
+        SET_SIMD.invokeExact(simd);
+    }
+
+    static boolean isSimdAvailable() throws Throwable {
+        return (boolean) IS_SIMD_AVAILABLE.invokeExact();
+    }
+
+    static double[] read(String filename) throws Throwable {
+        return (double[]) READ.invokeExact(filename);
+    }
+
+    static double[] resample(double[] input, double freqScale) throws Throwable {
+        return (double[]) RESAMPLE.invokeExact(input, freqScale);
+    }
+
+    static double[] vocodeSimple(double[] input, double freqScale) throws Throwable {
+        return (double[]) VOCODE_SIMPLE.invokeExact(input, freqScale);
+    }
+
+    static double[] vocodeSimpleOver(double[] input, double freqScale) throws Throwable {
+        return (double[]) VOCODE_SIMPLE_OVER.invokeExact(input, freqScale);
+    }
+
+    static double[] vocodeSimple(double[] input, double freqScale, ForkJoinPool pool) throws Throwable {
+        return (double[]) VOCODE_SIMPLE_POOL.invokeExact(input, freqScale, pool);
+    }
+
+    static double[] vocodeSimpleOver(double[] input, double freqScale, ForkJoinPool pool) throws Throwable {
+        return (double[]) VOCODE_SIMPLE_OVER_POOL.invokeExact(input, freqScale, pool);
+    }
+
+    static double[] vocodeSimpleOverCross(double[] input, double freqScale) throws Throwable {
+        return (double[]) VOCODE_SIMPLE_OVER_CROSS.invokeExact(input, freqScale);
+    }
+
+    static double[] vocodePhase(double[] input, double freqScale) throws Throwable {
+        return (double[]) VOCODE_PHASE.invokeExact(input, freqScale);
+    }
+
+    static double[] echo(double[] input, double delayMs, double attn) throws Throwable {
+        return (double[]) ECHO.invokeExact(input, delayMs, attn);
+    }
+
+    static double[] multiEcho(double[] input, double[] delaysMs, double[] gains, double[][] feedback)
+            throws Throwable {
+        return (double[]) MULTI_ECHO.invokeExact(input, delaysMs, gains, feedback);
+    }
+
+    static double[] reverb(double[] input, double[] impulse, double mix) throws Throwable {
+        return (double[]) REVERB.invokeExact(input, impulse, mix);
+    }
+}
@@ -0,0 +1,121 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The partitioned convolution of ConvolutionReverb against a direct convolution, and its block version against
+ * Pauvocoder.reverb
+ */
+class ConvolutionReverbTest {
+
+    private static final int BLOCK = ConvolutionReverb.BLOCK;
+    private static final double TOLERANCE = 1e-12;
+    private static final int[] BLOCKS = { 1, 37, 4096 };
+
+    private final Random random = new Random(5);
+
+    private double[] noise(int n, double amplitude) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = amplitude * (2 * random.nextDouble() - 1);
+        }
+        return values;
+    }
+
+    // Decreasing noise, small enough that nothing is clipped
+    private double[] impulse(int n) {
+        double[] impulse = noise(n, 0.02);
+        impulse[0] = 0.5;
+        return impulse;
+    }
+
+    // (1 - mix) * input + mix * (input * impulse), clipped, input.length + impulse.length - 1 samples
+    private static double[] direct(double[] input, double[] impulse, double mix) {
+        double[] output = new double[input.length == 0 ? 0 : input.length + impulse.length - 1];
+        for (int n = 0; n < output.length; n++) {
+            double wet = 0;
+            for (int k = Math.max(0, n - input.length + 1); k <= Math.min(n, impulse.length - 1); k++) {
+                wet += impulse[k] * input[n - k];
+            }
+            double dry = n < input.length ? input[n] : 0;
+            output[n] = Math.max(-1.0, Math.min(1.0, (1 - mix) * dry + mix * wet));
+        }
+        return output;
+    }
+
+    private static double[] stream(BlockProcessor processor, double[] input, int block) {
+        double[] output = new double[input.length + 100_000];
+        int[] count = { 0 };
+        SampleSink sink = (samples, offset, length) -> {
+            System.arraycopy(samples, offset, output, count[0], length);
+            count[0] += length;
+        };
+        for (int offset = 0; offset < input.length; offset += block) {
+            processor.process(input, offset, Math.min(block, input.length - offset), sink);
+        }
+        processor.flush(sink);
+        return Arrays.copyOf(output, count[0]);
+    }
+
+    private void assertDirect(int inputLength, int impulseLength, double mix) {
+        double[] input = noise(inputLength, 0.5);
+        double[] impulse = impulse(impulseLength);
+        String name = "input " + inputLength + ", impulse " + impulseLength + ", mix " + mix;
+        double[] expected = direct(input, impulse, mix);
+        double[] output = Pauvocoder.reverb(input, impulse, mix);
+        assertEquals(expected.length, output.length, name);
+        assertArrayEquals(expected, output, TOLERANCE, name);
+    }
+
+    @Test
+    void impulseNotAMultipleOfThePartitions() {
+        assertEquals(3, new ConvolutionReverb(new double[2 * BLOCK + 301], 0.5).getPartitions());
+        assertDirect(5000, 2 * BLOCK + 301, 1.0);
+        assertDirect(5000, 2 * BLOCK + 301, 0.3);
+        assertDirect(3 * BLOCK, BLOCK + 1, 1.0);
+    }
+
+    @Test
+    void inputShorterThanAPartition() {
+        assertDirect(100, 2 * BLOCK + 301, 1.0);
+        assertDirect(100, 7, 0.4);
+        assertDirect(1, BLOCK - 1, 1.0);
+    }
+
+    @Test
+    void impulseOfOneSample() {
+        assertDirect(1000, 1, 1.0);
+        assertDirect(BLOCK, 1, 0.5);
+    }
+
+    @Test
+    void emptyInput() {
+        assertEquals(0, Pauvocoder.reverb(new double[0], impulse(300), 0.5).length);
+    }
+
+    @Test
+    void clipped() {
+        double[] input = noise(2000, 1.0);
+        double[] impulse = noise(900, 1.0);
+        assertArrayEquals(direct(input, impulse, 0.8), Pauvocoder.reverb(input, impulse, 0.8), TOLERANCE);
+    }
+
+    @Test
+    void blocksLikeTheArrayVersion() {
+        double[] impulse = impulse(2 * BLOCK + 301);
+        for (int inputLength : new int[] { 100, 5000 }) {
+            double[] input = noise(inputLength, 0.5);
+            double[] expected = Pauvocoder.reverb(input, impulse, 0.3);
+            // The same processor for every block size, a flush starts a new signal
+            ConvolutionReverb reverb = new ConvolutionReverb(impulse, 0.3);
+            for (int block : BLOCKS) {
+                assertArrayEquals(expected, stream(reverb, input, block), "input " + inputLength + ", blocks of "
+                        + block);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * FFT against a naive DFT for every power of two from 1 to 1024 : the sizes 1, 2 and 4 take the special cases of the
+ * radix-4 passes ( no pass, one radix-2 pass alone, one radix-4 pass )
+ */
+class FFTTest {
+
+    private static final int MAX_SIZE = 1024;
+
+    private final Random random = new Random(11);
+
+    private double[] noise(int n) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = 2 * random.nextDouble() - 1;
+        }
+        return values;
+    }
+
+    // The rounding errors of the naive DFT grow with n
+    private static double tolerance(int n) {
+        return 1e-12 * Math.max(1, n);
+    }
+
+    // X[k] = sum of x[j] * exp(-+2*PI*i*j*k/n), not divided by n
+    private static double[][] dft(double[] re, double[] im, boolean inverse) {
+        int n = re.length;
+        double sign = inverse ? 1 : -1;
+        double[][] result = new double[2][n];
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0;
+            double sumIm = 0;
+            for (int j = 0; j < n; j++) {
+                double angle = sign * 2 * Math.PI * ((long) j * k % n) / n;
+                sumRe += re[j] * Math.cos(angle) - im[j] * Math.sin(angle);
+                sumIm += re[j] * Math.sin(angle) + im[j] * Math.cos(angle);
+            }
+            result[0][k] = sumRe;
+            result[1][k] = sumIm;
+        }
+        return result;
+    }
+
+    @Test
+    void complexTransform() {
+        for (int n = 1; n <= MAX_SIZE; n *= 2) {
+            for (boolean inverse : new boolean[] { false, true }) {
+                double[] re = noise(n);
+                double[] im = noise(n);
+                double[][] expected = dft(re, im, inverse);
+                FFT.transform(re, im, inverse);
+                double scale = inverse ? n : 1;
+                for (int k = 0; k < n; k++) {
+                    assertEquals(expected[0][k], re[k] * scale, tolerance(n), "re, n " + n + ", k " + k);
+                    assertEquals(expected[1][k], im[k] * scale, tolerance(n), "im, n " + n + ", k " + k);
+                }
+            }
+        }
+    }
+
+    @Test
+    void complexRoundTrip() {
+        for (int n = 1; n <= MAX_SIZE; n *= 2) {
+            double[] re = noise(n);
+            double[] im = noise(n);
+            double[] transformedRe = re.clone();
+            double[] transformedIm = im.clone();
+            FFT.transform(transformedRe, transformedIm, false);
+            FFT.transform(transformedRe, transformedIm, true);
+            assertArrayEquals(re, transformedRe, tolerance(n), "re, n " + n);
+            assertArrayEquals(im, transformedIm, tolerance(n), "im, n " + n);
+        }
+    }
+
+    @Test
+    void realForward() {
+        for (int n = 2; n <= MAX_SIZE; n *= 2) {
+            // Not at the start of the array, to check the offset
+            double[] input = noise(n + 3);
+            double[] samples = new double[n];
+            System.arraycopy(input, 3, samples, 0, n);
+            double[][] expected = dft(samples, new double[n], false);
+
+            double[] re = new double[n / 2 + 1];
+            double[] im = new double[n / 2 + 1];
+            FFT.plan(n).forward(input, 3, re, im);
+            for (int k = 0; k <= n / 2; k++) {
+                assertEquals(expected[0][k], re[k], tolerance(n), "re, n " + n + ", k " + k);
+                assertEquals(expected[1][k], im[k], tolerance(n), "im, n " + n + ", k " + k);
+            }
+        }
+    }
+
+    @Test
+    void realRoundTrip() {
+        for (int n = 2; n <= MAX_SIZE; n *= 2) {
+            double[] input = noise(n);
+            double[] re = new double[n / 2 + 1];
+            double[] im = new double[n / 2 + 1];
+            double[] output = new double[n + 5];
+            FFT plan = FFT.plan(n);
+            plan.forward(input, 0, re, im);
+            plan.inverse(re, im, output, 5);
+            for (int i = 0; i < n; i++) {
+                assertEquals(input[i], output[5 + i], tolerance(n), "n " + n + ", i " + i);
+            }
+            for (int i = 0; i < 5; i++) {
+                assertEquals(0, output[i], "written before offset, n " + n);
+            }
+        }
+    }
+
+    @Test
+    void plansAreCached() {
+        for (int n = 2; n <= MAX_SIZE; n *= 2) {
+            assertSame(FFT.plan(n), FFT.plan(n));
+            assertEquals(n, FFT.plan(n).size());
+        }
+    }
+
+    @Test
+    void sizesThatAreNotPowersOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> FFT.plan(1));
+        assertThrows(IllegalArgumentException.class, () -> FFT.plan(12));
+        assertThrows(IllegalArgumentException.class, () -> FFT.transform(new double[6], new double[6], false));
+        assertThrows(IllegalArgumentException.class, () -> FFT.transform(new double[4], new double[8], false));
+    }
+}
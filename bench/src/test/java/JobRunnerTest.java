@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JobRunner must return whatever its inputs throw, and read each input once for all its scales
+ */
+class JobRunnerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @TempDir
+    Path dir;
+
+    // The files only need to exist, the samples come from the reader of the test
+    private JobRunner runner(int workers, String... names) throws IOException {
+        Path in = Files.createDirectory(dir.resolve("in"));
+        for (String name : names) {
+            Files.createFile(in.resolve(name));
+        }
+        return JobRunner.parse(new String[] { "--jobs", in.toString(), "--workers", String.valueOf(workers),
+                "--scales", "0.7,1.3", "--stages", "resample", "--out", dir.resolve("out").toString() });
+    }
+
+    private static double[] sine() {
+        double[] samples = new double[4410];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 0.5 * Math.sin(2 * Math.PI * 440 * i / StdAudio.SAMPLE_RATE);
+        }
+        return samples;
+    }
+
+    @Test
+    void errorOfTheReaderOnlyFailsItsJobs() throws IOException {
+        JobRunner runner = runner(2, "a.wav", "b.wav", "c.wav");
+        runner.readWith(file -> {
+            if (file.endsWith("b.wav")) {
+                throw new OutOfMemoryError("Java heap space");
+            }
+            return sine();
+        });
+
+        int failed = assertTimeoutPreemptively(TIMEOUT, runner::run);
+        assertEquals(2, failed);
+        assertEquals(4, Files.list(dir.resolve("out")).count());
+    }
+
+    @Test
+    void everyInputFailing() throws IOException {
+        JobRunner runner = runner(3, "a.wav", "b.wav");
+        runner.readWith(file -> {
+            throw new IllegalStateException("unreadable " + file);
+        });
+
+        int failed = assertTimeoutPreemptively(TIMEOUT, runner::run);
+        assertEquals(4, failed);
+    }
+
+    @Test
+    void errorOfAStageOnlyFailsItsJob() throws IOException {
+        JobRunner runner = runner(1, "a.wav", "b.wav");
+        // No samples : the resample throws a NullPointerException
+        runner.readWith(file -> file.endsWith("a.wav") ? null : sine());
+
+        int failed = assertTimeoutPreemptively(TIMEOUT, runner::run);
+        assertEquals(2, failed);
+        assertEquals(2, Files.list(dir.resolve("out")).count());
+    }
+
+    @Test
+    void inputReadOnceForEveryScale() throws IOException {
+        JobRunner runner = runner(2, "a.wav", "b.wav");
+        Map<String, AtomicInteger> reads = new ConcurrentHashMap<>();
+        runner.readWith(file -> {
+            reads.computeIfAbsent(file, f -> new AtomicInteger()).incrementAndGet();
+            return sine();
+        });
+
+        assertEquals(0, assertTimeoutPreemptively(TIMEOUT, runner::run));
+        assertEquals(2, reads.size());
+        for (AtomicInteger count : reads.values()) {
+            assertEquals(1, count.get());
+        }
+    }
+}
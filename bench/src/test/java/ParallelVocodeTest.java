@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * vocodeSimple and vocodeSimpleOver on a ForkJoinPool give the wav of the serial versions
+ */
+class ParallelVocodeTest {
+
+    private static final double[] SCALES = { 0.55, 0.7, 1.0, 1.3, 1.9 };
+    private static final int[] THREADS = { 2, 3, 8 };
+    // One ulp of a sample of the seams, with the fused multiply-adds of the SIMD kernels
+    private static final double SIMD_TOLERANCE = 1e-15;
+
+    private final boolean simd = Kernels.isSimd();
+
+    @AfterEach
+    void restoreKernels() {
+        Kernels.setSimd(simd);
+    }
+
+    private static double[] noisySine(int length) {
+        Random random = new Random(7);
+        double[] samples = new double[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = 0.6 * Math.sin(2 * Math.PI * 220 * i / StdAudio.SAMPLE_RATE) + 0.2 * random.nextGaussian();
+        }
+        return samples;
+    }
+
+    private static void compare(boolean simd, double tolerance) {
+        Kernels.setSimd(simd);
+        double[] input = noisySine(300_007);
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (double freqScale : SCALES) {
+                    String name = "freqScale " + freqScale + ", " + threads + " threads";
+                    assertArrayEquals(Pauvocoder.vocodeSimple(input, freqScale),
+                            Pauvocoder.vocodeSimple(input, freqScale, pool), "simple, " + name);
+                    double[] serial = Pauvocoder.vocodeSimpleOver(input, freqScale);
+                    double[] parallel = Pauvocoder.vocodeSimpleOver(input, freqScale, pool);
+                    assertEquals(serial.length, parallel.length, "over, " + name);
+                    assertArrayEquals(serial, parallel, tolerance, "over, " + name);
+                }
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void scalarIsIdentical() {
+        compare(false, 0);
+    }
+
+    @Test
+    void simdWithinOneUlp() {
+        compare(true, SIMD_TOLERANCE);
+    }
+
+    @Test
+    void tooFewSequencesToSplit() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            double[] input = noisySine(5000);
+            assertArrayEquals(Pauvocoder.vocodeSimpleOver(input, 1.3), Pauvocoder.vocodeSimpleOver(input, 1.3, pool));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Pushing a signal block by block into a BlockProcessor and flushing gives the wav of the array function : exactly
+ * with the scalar kernels, up to one ulp with the SIMD ones ( StreamingEcho does not use the fused multiply-add of
+ * Pauvocoder.echo )
+ */
+class StreamingTest {
+
+    private static final int[] BLOCKS = { 1, 37, 4096 };
+    private static final double[] SCALES = { 0.7, 1.3 };
+
+    private static final double SIMD_TOLERANCE = 1e-15;
+
+    private static final double[] INPUT = noisySine(30_011);
+
+    private final boolean simd = Kernels.isSimd();
+    private double tolerance;
+
+    @AfterEach
+    void restoreKernels() {
+        Kernels.setSimd(simd);
+    }
+
+    private void useSimd(boolean simd) {
+        Kernels.setSimd(simd);
+        tolerance = simd ? SIMD_TOLERANCE : 0;
+    }
+
+    private static double[] noisySine(int length) {
+        Random random = new Random(3);
+        double[] samples = new double[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = 0.6 * Math.sin(2 * Math.PI * 330 * i / StdAudio.SAMPLE_RATE) + 0.2 * random.nextGaussian();
+        }
+        return samples;
+    }
+
+    // Push input in blocks of block samples, then flush
+    private static double[] stream(BlockProcessor processor, double[] input, int block) {
+        double[][] output = { new double[1024] };
+        int[] count = { 0 };
+        SampleSink sink = (samples, offset, length) -> {
+            if (count[0] + length > output[0].length) {
+                output[0] = Arrays.copyOf(output[0], Math.max(2 * output[0].length, count[0] + length));
+            }
+            System.arraycopy(samples, offset, output[0], count[0], length);
+            count[0] += length;
+        };
+        for (int offset = 0; offset < input.length; offset += block) {
+            processor.process(input, offset, Math.min(block, input.length - offset), sink);
+        }
+        processor.flush(sink);
+        return Arrays.copyOf(output[0], count[0]);
+    }
+
+    private void assertStreams(double[] expected, BlockProcessor processor, String name) {
+        for (int block : BLOCKS) {
+            double[] streamed = stream(processor, INPUT, block);
+            assertEquals(expected.length, streamed.length, name + ", blocks of " + block);
+            assertArrayEquals(expected, streamed, tolerance, name + ", blocks of " + block);
+        }
+    }
+
+    @ParameterizedTest(name = "simd {0}")
+    @ValueSource(booleans = { false, true })
+    void resampler(boolean simd) {
+        useSimd(simd);
+        for (double freqScale : SCALES) {
+            assertStreams(Pauvocoder.resample(INPUT, freqScale), new StreamingResampler(freqScale),
+                    "resample " + freqScale);
+        }
+    }
+
+    @ParameterizedTest(name = "simd {0}")
+    @ValueSource(booleans = { false, true })
+    void vocoderSimple(boolean simd) {
+        useSimd(simd);
+        for (double freqScale : SCALES) {
+            assertStreams(Pauvocoder.vocodeSimple(INPUT, freqScale),
+                    new StreamingVocoder(StreamingVocoder.Mode.SIMPLE, freqScale), "simple " + freqScale);
+        }
+    }
+
+    @ParameterizedTest(name = "simd {0}")
+    @ValueSource(booleans = { false, true })
+    void vocoderOver(boolean simd) {
+        useSimd(simd);
+        for (double freqScale : SCALES) {
+            assertStreams(Pauvocoder.vocodeSimpleOver(INPUT, freqScale),
+                    new StreamingVocoder(StreamingVocoder.Mode.OVER, freqScale), "over " + freqScale);
+        }
+    }
+
+    @ParameterizedTest(name = "simd {0}")
+    @ValueSource(booleans = { false, true })
+    void vocoderOverCross(boolean simd) {
+        useSimd(simd);
+        for (double freqScale : SCALES) {
+            assertStreams(Pauvocoder.vocodeSimpleOverCross(INPUT, freqScale),
+                    new StreamingVocoder(StreamingVocoder.Mode.OVER_CROSS, freqScale), "cross " + freqScale);
+        }
+    }
+
+    @ParameterizedTest(name = "simd {0}")
+    @ValueSource(booleans = { false, true })
+    void echo(boolean simd) {
+        useSimd(simd);
+        // A delay longer and shorter than the blocks
+        for (double delayMs : new double[] { 100, 0.5 }) {
+            assertStreams(Pauvocoder.echo(INPUT, delayMs, 0.7), new StreamingEcho(delayMs, 0.7), "echo " + delayMs);
+        }
+    }
+
+    @ParameterizedTest(name = "simd {0}")
+    @ValueSource(booleans = { false, true })
+    void chainLikeMain(boolean simd) {
+        useSimd(simd);
+        for (double freqScale : SCALES) {
+            double[] expected = Pauvocoder.echo(Pauvocoder.vocodeSimpleOverCross(
+                    Pauvocoder.resample(INPUT, freqScale), 1.0 / freqScale), 100, 0.7);
+            assertStreams(expected, BlockProcessor.chain(new StreamingResampler(freqScale),
+                    new StreamingVocoder(StreamingVocoder.Mode.OVER_CROSS, 1.0 / freqScale),
+                    new StreamingEcho(100, 0.7)), "chain " + freqScale);
+        }
+    }
+
+    @ParameterizedTest(name = "simd {0}")
+    @ValueSource(booleans = { false, true })
+    void signalShorterThanASequence(boolean simd) {
+        useSimd(simd);
+        double[] input = Arrays.copyOf(INPUT, 500);
+        for (StreamingVocoder.Mode mode : StreamingVocoder.Mode.values()) {
+            double[] expected = mode == StreamingVocoder.Mode.SIMPLE ? Pauvocoder.vocodeSimple(input, 1.3)
+                    : mode == StreamingVocoder.Mode.OVER ? Pauvocoder.vocodeSimpleOver(input, 1.3)
+                    : Pauvocoder.vocodeSimpleOverCross(input, 1.3);
+            for (int block : BLOCKS) {
+                assertArrayEquals(expected, stream(new StreamingVocoder(mode, 1.3), input, block), tolerance,
+                        mode + ", blocks of " + block);
+            }
+        }
+    }
+}
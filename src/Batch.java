@@ -0,0 +1,420 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Non interactive mode of Pauvocoder ( pauvocoder --batch ... ) : no pause, no sound and no window, only the output
+ * files. Every input file is processed with every freqScale in the same JVM, so the warm up is only paid once, and
+ * the time of each stage is printed with its real-time factor ( seconds of audio processed per second ).
+ *
+ * @apiNote The stages follow main : the input is resampled, the dilatations work on the resampled wav with
+ * 1 / freqScale, and the echo is added to the cross dilatation. If cross is not chosen the echo goes on the last
+ * dilatation chosen instead ( or on the resampled wav if there is none ), the name of the output file says which.
+ * The resample is always done since the other stages need it, it is only written if it is chosen.
+ * With --threads n the simple and over dilatations of each file are shared between n threads ( see FrameTask ).
+ * --cross-decimation d makes the offset search of the cross dilatation coarse to fine ( see CrossSearch ), with
+ * --cross-radius samples refined around each coarse candidate ( d by default ). It tests 3 to 10 times fewer sample
+ * products, but it can choose other offsets than the exact search and then whole sequences move : the wav is not the
+ * same, on a noisy sine some samples differ by as much as the signal itself. The search is part of the cache key.
+ */
+public final class Batch {
+
+    static final String USAGE = "usage: pauvocoder --batch --scales <freqScale,...> [--stages <stage,...>]"
+            + " [--out <dir>] [--cache <dir>] [--threads <n>] [--cross-decimation <n> [--cross-radius <n>]] [--images]"
+            + " <input.wav>...\n"
+            + "       stages: resample, simple, over, cross, phase, echo (all by default)";
+
+    /**
+     * The stages that can be chosen, in the order they are done
+     */
+    enum Stage {
+        RESAMPLE("resample", "Resampled"),
+        SIMPLE("simple", "Simple"),
+        OVER("over", "SimpleOver"),
+        CROSS("cross", "SimpleOverCross"),
+        PHASE("phase", "Phase"),
+        ECHO("echo", "Echo");
+
+        final String flag;
+        final String suffix; // end of the name of the output file
+
+        Stage(String flag, String suffix) {
+            this.flag = flag;
+            this.suffix = suffix;
+        }
+
+        static Stage of(String flag) {
+            for (Stage stage : values()) {
+                if (stage.flag.equals(flag)) {
+                    return stage;
+                }
+            }
+            throw new IllegalArgumentException("unknown stage " + flag);
+        }
+    }
+
+    private final EnumSet<Stage> stages;
+    private final double[] scales;
+    private final List<String> files;
+    private final String outDir;  // null to write next to each input
+    private final boolean images;
+    private final StageCache cache; // null for no cache
+    private final int threads;      // threads of the simple and over dilatations, 1 to stay in the current thread
+    private final int crossDecimation; // 1 for the exact search
+    private final int crossRadius;
+
+    // Totals of every file and scale, by stage
+    private final long[] stageNanos = new long[Stage.values().length];
+    private final long[] stageSamples = new long[Stage.values().length];
+
+    private Batch(EnumSet<Stage> stages, double[] scales, List<String> files, String outDir, boolean images,
+                  StageCache cache, int threads, int crossDecimation, int crossRadius) {
+        this.stages = stages;
+        this.scales = scales;
+        this.files = files;
+        this.outDir = outDir;
+        this.images = images;
+        this.cache = cache;
+        this.threads = threads;
+        this.crossDecimation = crossDecimation;
+        this.crossRadius = crossRadius;
+    }
+
+    /**
+     * Read the flags, the first one is --batch
+     *
+     * @param args arguments of main
+     * @return the batch to run
+     */
+    static Batch parse(String[] args) {
+        EnumSet<Stage> stages = EnumSet.allOf(Stage.class);
+        double[] scales = null;
+        List<String> files = new ArrayList<>();
+        String outDir = null;
+        boolean images = false;
+        String cacheDir = System.getProperty("pauvocoder.cache");
+        int threads = 1;
+        int crossDecimation = 1;
+        int crossRadius = -1;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--stages":
+                    stages = EnumSet.noneOf(Stage.class);
+                    for (String flag : value(args, ++i).split(",")) {
+                        stages.add(Stage.of(flag.trim()));
+                    }
+                    break;
+                case "--scales":
+                    String[] values = value(args, ++i).split(",");
+                    scales = new double[values.length];
+                    for (int s = 0; s < values.length; s++) {
+                        scales[s] = Double.parseDouble(values[s].trim());
+                        if (scales[s] <= 0) {
+                            throw new IllegalArgumentException("freqScale must be greater than 0");
+                        }
+                    }
+                    break;
+                case "--out":
+                    outDir = value(args, ++i);
+                    break;
+                case "--cache":
+                    cacheDir = value(args, ++i);
+                    break;
+                case "--threads":
+                    threads = parseCount(args, ++i, 1);
+                    break;
+                case "--cross-decimation":
+                    crossDecimation = parseCount(args, ++i, 1);
+                    break;
+                case "--cross-radius":
+                    crossRadius = parseCount(args, ++i, 0);
+                    break;
+                case "--images":
+                    images = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("unknown flag " + args[i]);
+                    }
+                    files.add(args[i]);
+            }
+        }
+
+        if (scales == null) {
+            throw new IllegalArgumentException("--scales is needed");
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("no input file");
+        }
+        StageCache cache = cacheDir != null ? StageCache.open(cacheDir) : null;
+        return new Batch(stages, scales, files, outDir, images, cache, threads, crossDecimation,
+                crossRadius(crossDecimation, crossRadius));
+    }
+
+    /**
+     * Read an integer flag
+     *
+     * @param args arguments of main
+     * @param i index of the value
+     * @param min smallest value allowed
+     * @return the value
+     */
+    static int parseCount(String[] args, int i, int min) {
+        int count = Integer.parseInt(value(args, i));
+        if (count < min) {
+            throw new IllegalArgumentException(args[i - 1] + " must be at least " + min);
+        }
+        return count;
+    }
+
+    /**
+     * Refinement radius of the cross search : 0 for the exact search, the decimation when it is not given
+     *
+     * @param decimation value of --cross-decimation
+     * @param radius value of --cross-radius, negative when it is not given
+     * @return the radius
+     */
+    static int crossRadius(int decimation, int radius) {
+        if (decimation == 1) {
+            return 0;
+        }
+        return radius < 0 ? decimation : radius;
+    }
+
+    /**
+     * Key of the cross dilatation in the StageCache, the search is part of it since it changes the wav
+     *
+     * @param resampleKey key of the resampled wav
+     * @param freqScale factor of the dilatation ( 1 / freqScale of the resample )
+     * @param decimation decimation of the CrossSearch, 1 for the exact search
+     * @param radius refinement radius of the CrossSearch
+     * @return the key, null if resampleKey is null
+     */
+    static String crossKey(String resampleKey, double freqScale, int decimation, int radius) {
+        return StageCache.key(resampleKey, Stage.CROSS.flag, freqScale, decimation, radius);
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+
+    /**
+     * Process every file with every scale, a file that fails ( can't be read or written, or a stage throws ) is
+     * reported and skipped
+     *
+     * @return number of files that failed
+     */
+    int run() {
+        if (images) {
+            // The images are drawn without window even if there is a display
+            System.setProperty("stddraw.headless", "true");
+        }
+        if (outDir != null) {
+            new File(outDir).mkdirs();
+        }
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        int failed = 0;
+        for (String file : files) {
+            try {
+                processFile(file, pool);
+            }
+            catch (IllegalArgumentException | IllegalStateException e) {
+                System.out.println(file + " : échec, " + e.getMessage());
+                failed++;
+            }
+            catch (RuntimeException e) {
+                // A bug in a stage must not stop the other files either
+                System.out.println(file + " : échec, " + e);
+                e.printStackTrace();
+                failed++;
+            }
+        }
+
+        if (pool != null) {
+            pool.shutdown();
+        }
+
+        System.out.println("Total :");
+        for (Stage stage : Stage.values()) {
+            if (stageSamples[stage.ordinal()] > 0) {
+                printTime(stage.flag, stageNanos[stage.ordinal()], stageSamples[stage.ordinal()]);
+            }
+        }
+        if (cache != null) {
+            System.out.println("Cache : " + cache);
+        }
+        return failed;
+    }
+
+    /**
+     * The wavs made by the stages of one input with one freqScale
+     */
+    static final class Outputs {
+        final List<String> suffixes = new ArrayList<>(); // end of the output file names, without .wav
+        final List<double[]> wavs = new ArrayList<>();
+        final long[] stageNanos = new long[Stage.values().length];   // 0 for a stage not done
+        final long[] stageSamples = new long[Stage.values().length]; // input samples of each stage
+    }
+
+    /**
+     * Run the stages on one input, nothing is written
+     *
+     * @param inputWav the input
+     * @param inputKey StageCache.key(inputWav), null for no cache
+     * @param freqScale same as main
+     * @param stages the stages whose output is kept, the resample is always done
+     * @param cache results of the stages already done, null for no cache
+     * @param pool pool of the simple and over dilatations, null to stay in the current thread
+     * @param crossDecimation decimation of the CrossSearch of the cross dilatation, 1 for the exact search
+     * @param crossRadius refinement radius of that CrossSearch
+     * @return the outputs of the stages and their time ( the time of a stage found in the cache is its read )
+     */
+    static Outputs runStages(double[] inputWav, String inputKey, double freqScale, EnumSet<Stage> stages,
+                             StageCache cache, ForkJoinPool pool, int crossDecimation, int crossRadius) {
+        Outputs outputs = new Outputs();
+        String resampleKey = StageCache.key(inputKey, Stage.RESAMPLE.flag, freqScale);
+        double[] newPitchWav = time(outputs, Stage.RESAMPLE, inputWav, () -> StageCache.cached(cache, resampleKey,
+                () -> Pauvocoder.resample(inputWav, freqScale)));
+        keep(outputs, stages, Stage.RESAMPLE, Stage.RESAMPLE.suffix, newPitchWav);
+
+        // The echo goes on cross like in main, or on the last dilatation when cross is not chosen
+        double[] echoSource = newPitchWav;
+        String echoName = Stage.RESAMPLE.suffix;
+        String echoKey = resampleKey;
+        for (Stage stage : EnumSet.of(Stage.SIMPLE, Stage.OVER, Stage.CROSS, Stage.PHASE)) {
+            if (stages.contains(stage)) {
+                String key = stage == Stage.CROSS
+                        ? crossKey(resampleKey, 1.0 / freqScale, crossDecimation, crossRadius)
+                        : StageCache.key(resampleKey, stage.flag, 1.0 / freqScale);
+                double[] dilated = time(outputs, stage, newPitchWav, () -> StageCache.cached(cache, key,
+                        () -> dilate(stage, newPitchWav, 1.0 / freqScale, pool, crossDecimation, crossRadius)));
+                if (stage == Stage.CROSS || !stages.contains(Stage.CROSS)) {
+                    echoSource = dilated;
+                    echoName = stage.suffix;
+                    echoKey = key;
+                }
+                keep(outputs, stages, stage, stage.suffix, dilated);
+            }
+        }
+
+        if (stages.contains(Stage.ECHO)) {
+            double[] echoInput = echoSource;
+            String key = StageCache.key(echoKey, Stage.ECHO.flag, 100, 0.7);
+            double[] echoWav = time(outputs, Stage.ECHO, echoInput, () -> StageCache.cached(cache, key,
+                    () -> Pauvocoder.echo(echoInput, 100, 0.7)));
+            keep(outputs, stages, Stage.ECHO, echoName + Stage.ECHO.suffix, echoWav);
+        }
+        return outputs;
+    }
+
+    private void processFile(String file, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        double[] inputWav = StdAudio.read(file);
+        System.out.println(file);
+        printTime("lecture", System.nanoTime() - start, inputWav.length);
+        if (images) {
+            saveImage(inputWav, prefix(file, outDir) + "waveform.png");
+        }
+        String inputKey = cache != null ? StageCache.key(inputWav) : null;
+
+        for (double freqScale : scales) {
+            System.out.println("  freqScale " + freqScale);
+            Outputs outputs = runStages(inputWav, inputKey, freqScale, stages, cache, pool, crossDecimation,
+                    crossRadius);
+            for (Stage stage : Stage.values()) {
+                int s = stage.ordinal();
+                if (outputs.stageSamples[s] > 0) {
+                    stageNanos[s] += outputs.stageNanos[s];
+                    stageSamples[s] += outputs.stageSamples[s];
+                    printTime(stage.flag, outputs.stageNanos[s], outputs.stageSamples[s]);
+                }
+            }
+
+            String outPutFile = prefix(file, outDir) + freqScale + "_";
+            for (int i = 0; i < outputs.wavs.size(); i++) {
+                StdAudio.save(outPutFile + outputs.suffixes.get(i) + ".wav", outputs.wavs.get(i));
+                if (images) {
+                    saveImage(outputs.wavs.get(i), outPutFile + outputs.suffixes.get(i) + ".png");
+                }
+            }
+        }
+    }
+
+    private static double[] dilate(Stage stage, double[] input, double freqScale, ForkJoinPool pool,
+                                   int crossDecimation, int crossRadius) {
+        switch (stage) {
+            case SIMPLE:
+                return Pauvocoder.vocodeSimple(input, freqScale, pool);
+            case OVER:
+                return Pauvocoder.vocodeSimpleOver(input, freqScale, pool);
+            case CROSS:
+                return Pauvocoder.vocodeSimpleOverCross(input, freqScale,
+                        new CrossSearch(crossDecimation, crossRadius));
+            default:
+                return Pauvocoder.vocodePhase(input, freqScale);
+        }
+    }
+
+    // Run a stage on input and keep its time
+    private static double[] time(Outputs outputs, Stage stage, double[] input, Supplier<double[]> work) {
+        long start = System.nanoTime();
+        double[] output = work.get();
+        outputs.stageNanos[stage.ordinal()] += System.nanoTime() - start;
+        outputs.stageSamples[stage.ordinal()] += input.length;
+        return output;
+    }
+
+    private static void keep(Outputs outputs, EnumSet<Stage> stages, Stage stage, String suffix, double[] wav) {
+        if (stages.contains(stage)) {
+            outputs.suffixes.add(suffix);
+            outputs.wavs.add(wav);
+        }
+    }
+
+    private static void saveImage(double[] wav, String filename) {
+        WaveformView view = WaveformView.get();
+        view.update(wav, 0, wav.length);
+        view.save(filename);
+    }
+
+    /**
+     * Beginning of the output files of an input : the same name without extension, followed by _
+     *
+     * @param file the input
+     * @param outDir directory of the outputs, null for the directory of the input
+     * @return the prefix
+     */
+    static String prefix(String file, String outDir) {
+        File input = new File(file);
+        String name = input.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        String dir = outDir != null ? outDir : input.getParent();
+        return (dir == null ? "" : dir + File.separator) + name + "_";
+    }
+
+    /**
+     * Print the time of a stage and its real-time factor
+     *
+     * @param name name of the stage
+     * @param nanos time taken
+     * @param samples input samples processed
+     */
+    static void printTime(String name, long nanos, long samples) {
+        double ms = nanos / 1e6;
+        double seconds = (double) samples / StdAudio.SAMPLE_RATE;
+        System.out.println(String.format(Locale.ROOT, "    %-10s %10.1f ms  temps réel x%.0f", name, ms,
+                seconds / Math.max(nanos / 1e9, 1e-9)));
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Block version of a Pauvocoder function : N samples are pushed in, M samples come out, and the processor keeps what
+ * it needs between two blocks. The memory doesn't depend on the length of the signal.
+ *
+ * @apiNote Pushing a whole array and then calling flush gives the same result as the array function, block by block
+ * too. With the SIMD kernels StreamingEcho can differ by one ulp : Pauvocoder.echo adds with a fused multiply-add.
+ */
+public interface BlockProcessor {
+
+    /**
+     * Push samples, the samples that are ready are written to out
+     *
+     * @param samples the samples
+     * @param offset index of the first sample in samples
+     * @param length number of samples
+     * @param out receives the output
+     */
+    void process(double[] samples, int offset, int length, SampleSink out);
+
+    /**
+     * End of the signal, write what is left to out. The processor can then be used for a new signal.
+     *
+     * @param out receives the output
+     */
+    void flush(SampleSink out);
+
+    /**
+     * Push a whole array
+     *
+     * @param samples the samples
+     * @param out receives the output
+     */
+    default void process(double[] samples, SampleSink out) {
+        process(samples, 0, samples.length, out);
+    }
+
+    /**
+     * Chain processors, the output of one is the input of the next
+     *
+     * @param processors the processors, in order
+     * @return the chain
+     */
+    static BlockProcessor chain(BlockProcessor... processors) {
+        if (processors.length == 0) {
+            throw new IllegalArgumentException("chain needs at least one processor");
+        }
+        return new BlockProcessor() {
+            @Override
+            public void process(double[] samples, int offset, int length, SampleSink out) {
+                sinkFrom(0, out).write(samples, offset, length);
+            }
+
+            @Override
+            public void flush(SampleSink out) {
+                // Each flush can still produce samples for the next processors
+                for (int i = 0; i < processors.length; i++) {
+                    processors[i].flush(sinkFrom(i + 1, out));
+                }
+            }
+
+            // Sink that pushes into processors[index], and so on until out
+            private SampleSink sinkFrom(int index, SampleSink out) {
+                SampleSink sink = out;
+                for (int i = processors.length - 1; i >= index; i--) {
+                    BlockProcessor processor = processors[i];
+                    SampleSink next = sink;
+                    sink = (samples, offset, length) -> processor.process(samples, offset, length, next);
+                }
+                return sink;
+            }
+        };
+    }
+}
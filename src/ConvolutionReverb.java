@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+/**
+ * Reverb by convolution with the impulse response of a room, block version used by Pauvocoder.reverb.
+ *
+ * @apiNote Uniformly partitioned convolution ( overlap-save ) : the impulse response is cut in partitions of BLOCK
+ * samples whose spectra are computed once. Each block of BLOCK input samples is transformed once and kept in a
+ * delay line of spectra, the output block is the inverse of the sum of the spectra of the last blocks multiplied by
+ * the partitions. A sample costs O(partitions) multiplications instead of O(impulse length), and the output comes
+ * BLOCK samples after the input whatever the length of the impulse.
+ */
+public final class ConvolutionReverb implements BlockProcessor {
+
+    public static final int BLOCK = 512;
+    private static final int FFT_SIZE = 2 * BLOCK;
+    private static final int BINS = BLOCK + 1;
+
+    private final FFT fft = FFT.plan(FFT_SIZE);
+    private final double mix;
+    private final int tail;            // samples after the end of the input, impulse.length - 1
+    private final int partitions;
+    private final double[][] impulseRe; // impulseRe[partition][bin]
+    private final double[][] impulseIm;
+
+    private final double[][] inputRe;  // spectra of the last blocks, inputRe[position] is the newest
+    private final double[][] inputIm;
+    private int position = 0;
+    private final double[] window = new double[FFT_SIZE]; // previous block then the block being filled
+    private int filled = 0;
+    private final double[] sumRe = new double[BINS];
+    private final double[] sumIm = new double[BINS];
+    private final double[] wet = new double[FFT_SIZE];
+    private final double[] outBlock = new double[BLOCK];
+    private long received = 0;
+    private long produced = 0;
+
+    /**
+     * Compute the spectra of the impulse response
+     *
+     * @param impulse impulse response of the room, at least one sample
+     * @param mix part of the reverb in the output, between 0 ( dry ) and 1 ( only the reverb )
+     */
+    public ConvolutionReverb(double[] impulse, double mix) {
+        if (impulse.length == 0) {
+            throw new IllegalArgumentException("The impulse response is empty.");
+        }
+        if (mix < 0 || mix > 1) {
+            throw new IllegalArgumentException("Mix must be between 0 and 1.");
+        }
+        this.mix = mix;
+        this.tail = impulse.length - 1;
+        this.partitions = (impulse.length + BLOCK - 1) / BLOCK;
+
+        impulseRe = new double[partitions][BINS];
+        impulseIm = new double[partitions][BINS];
+        double[] padded = new double[FFT_SIZE];
+        for (int p = 0; p < partitions; p++) {
+            // A partition in the first half, zeros after it so that the overlap-save keeps the linear convolution
+            int length = Math.min(BLOCK, impulse.length - p * BLOCK);
+            Arrays.fill(padded, 0);
+            System.arraycopy(impulse, p * BLOCK, padded, 0, length);
+            fft.forward(padded, 0, impulseRe[p], impulseIm[p]);
+        }
+        inputRe = new double[partitions][BINS];
+        inputIm = new double[partitions][BINS];
+    }
+
+    /**
+     * @return number of partitions of the impulse response
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    @Override
+    public void process(double[] samples, int offset, int length, SampleSink out) {
+        while (length > 0) {
+            int n = Math.min(length, BLOCK - filled);
+            System.arraycopy(samples, offset, window, BLOCK + filled, n);
+            filled += n;
+            received += n;
+            offset += n;
+            length -= n;
+            if (filled == BLOCK) {
+                processBlock(out, BLOCK);
+            }
+        }
+    }
+
+    @Override
+    public void flush(SampleSink out) {
+        // The reverb goes on tail samples after the end of the input, the missing input is 0
+        long total = received == 0 ? 0 : received + tail;
+        while (produced < total) {
+            Arrays.fill(window, BLOCK + filled, FFT_SIZE, 0);
+            processBlock(out, (int) Math.min(BLOCK, total - produced));
+        }
+
+        for (int p = 0; p < partitions; p++) {
+            Arrays.fill(inputRe[p], 0);
+            Arrays.fill(inputIm[p], 0);
+        }
+        Arrays.fill(window, 0);
+        position = 0;
+        filled = 0;
+        received = 0;
+        produced = 0;
+    }
+
+    // Convolve the block in the second half of window, write the first count samples of the result
+    private void processBlock(SampleSink out, int count) {
+        fft.forward(window, 0, inputRe[position], inputIm[position]);
+
+        // Block k ago times partition k
+        Arrays.fill(sumRe, 0);
+        Arrays.fill(sumIm, 0);
+        for (int p = 0; p < partitions; p++) {
+            int slot = position - p < 0 ? position - p + partitions : position - p;
+            double[] xRe = inputRe[slot];
+            double[] xIm = inputIm[slot];
+            double[] hRe = impulseRe[p];
+            double[] hIm = impulseIm[p];
+            for (int k = 0; k < BINS; k++) {
+                sumRe[k] += xRe[k] * hRe[k] - xIm[k] * hIm[k];
+                sumIm[k] += xRe[k] * hIm[k] + xIm[k] * hRe[k];
+            }
+        }
+        fft.inverse(sumRe, sumIm, wet, 0);
+
+        // The first half is wrapped around, the second half is the convolution of the block
+        for (int i = 0; i < count; i++) {
+            double value = (1 - mix) * window[BLOCK + i] + mix * wet[BLOCK + i];
+            // Limit values to the range [-1, 1]
+            outBlock[i] = Math.max(-1.0, Math.min(1.0, value));
+        }
+        out.write(outBlock, 0, count);
+        produced += count;
+
+        System.arraycopy(window, BLOCK, window, 0, BLOCK);
+        filled = 0;
+        position = position + 1 == partitions ? 0 : position + 1;
+    }
+}
@@ -0,0 +1,336 @@
+import java.util.Arrays;
+
+/**
+ * Search of the best offset for the cross correlation dilatation (vocodeSimpleOverCross).
+ *
+ * @apiNote With a decimation of 1 every offset is tested at once with a FFT. With a bigger decimation the search is
+ * coarse to fine : the template and the candidates are first decimated (mean of decimation samples) and correlated,
+ * then only the offsets around the best coarse candidates (refineRadius samples on each side) are tested at full rate.
+ * The coarse correlation is done with a FFT too. The coarse search may miss the best offset when it is not near a
+ * coarse peak, so the dilated wav is not guaranteed to be the one of the exact search ( Batch --cross-decimation ).
+ * The counters keep track of how many offsets and sample products were tested compared to a brute force search. The buffers are kept between calls, an instance is used by one thread at a
+ * time.
+ */
+public final class CrossSearch {
+
+    // Number of coarse candidates that are refined at full rate
+    private static final int COARSE_CANDIDATES = 3;
+
+    private final int decimation;
+    private final int refineRadius;
+
+    private long coarseEvaluations = 0;     // offsets tested on the decimated signal
+    private long fineEvaluations = 0;       // offsets tested at full rate
+    private long bruteForceEvaluations = 0; // offsets a brute force search would have tested
+
+    // Work in sample products ( template sample times candidate sample ) of a direct correlation
+    private long coarseProducts = 0;
+    private long fineProducts = 0;
+    private long bruteForceProducts = 0;
+
+    // Buffers of the FFT correlation, kept between calls and grown when needed
+    private double[] padded = new double[0];
+    private double[] correlation = new double[0];
+    private double[] regionRe;
+    private double[] regionIm;
+    private double[] templateRe;
+    private double[] templateIm;
+
+    // Decimated template and candidates of the coarse search
+    private double[] coarseTemplate = new double[0];
+    private double[] coarseRegion = new double[0];
+
+    // The COARSE_CANDIDATES best coarse offsets, sorted by decreasing score
+    private final int[] candidates = new int[COARSE_CANDIDATES];
+    private final double[] candidateScores = new double[COARSE_CANDIDATES];
+
+    /**
+     * Exact search, every offset is tested with a FFT
+     */
+    public CrossSearch() {
+        this(1, 0);
+    }
+
+    /**
+     * @param decimation decimation factor of the coarse search, 1 for the exact search
+     * @param refineRadius number of samples tested at full rate on each side of a coarse candidate
+     */
+    public CrossSearch(int decimation, int refineRadius) {
+        if (decimation < 1) {
+            throw new IllegalArgumentException("decimation must be at least 1");
+        }
+        if (refineRadius < 0) {
+            throw new IllegalArgumentException("refineRadius must be positive");
+        }
+        this.decimation = decimation;
+        this.refineRadius = refineRadius;
+    }
+
+    public int getDecimation() {
+        return decimation;
+    }
+
+    public int getRefineRadius() {
+        return refineRadius;
+    }
+
+    /**
+     * @return number of offsets tested on the decimated signal
+     */
+    public long getCoarseEvaluations() {
+        return coarseEvaluations;
+    }
+
+    /**
+     * @return number of offsets tested at full rate
+     */
+    public long getFineEvaluations() {
+        return fineEvaluations;
+    }
+
+    /**
+     * @return number of offsets a brute force search would have tested at full rate
+     */
+    public long getBruteForceEvaluations() {
+        return bruteForceEvaluations;
+    }
+
+    /**
+     * @return sample products of the offsets tested, a coarse offset costs templateLength / decimation products
+     */
+    public long getProducts() {
+        return coarseProducts + fineProducts;
+    }
+
+    /**
+     * @return sample products of a brute force search, templateLength per offset
+     */
+    public long getBruteForceProducts() {
+        return bruteForceProducts;
+    }
+
+    /**
+     * @return sample products that were not computed compared to a brute force search
+     * @apiNote The offsets tested with a FFT are counted as if they were correlated directly, so this is the work
+     * saved by the coarse search, not by the FFT
+     */
+    public long getSavedProducts() {
+        return bruteForceProducts - getProducts();
+    }
+
+    @Override
+    public String toString() {
+        return "decimation " + decimation + ", radius " + refineRadius + " : "
+                + coarseEvaluations + " coarse + " + fineEvaluations + " fine offsets instead of "
+                + bruteForceEvaluations + ", " + getProducts() + " sample products instead of " + bruteForceProducts
+                + " (" + getSavedProducts() + " saved)";
+    }
+
+    /**
+     * Find the start of the sequence, around nominalStart, that matches the best the template
+     *
+     * @param input the whole signal
+     * @param templateStart start of the template in the input
+     * @param templateLength length of the template ( the overlap )
+     * @param nominalStart start of the sequence without any search
+     * @param searchRange maximum distance between nominalStart and the result
+     * @param seqLength length of a sequence, the result always leave room for a full sequence when possible
+     * @return the best start
+     */
+    public int bestOffset(double[] input, int templateStart, int templateLength, int nominalStart,
+                          int searchRange, int seqLength) {
+        return bestOffset(input, input.length, templateStart, templateLength, nominalStart, searchRange, seqLength);
+    }
+
+    /**
+     * Same as bestOffset, but only the first inputLength samples of input are valid ( input is a buffer )
+     *
+     * @param input the signal
+     * @param inputLength number of valid samples in input
+     * @param templateStart start of the template in the input
+     * @param templateLength length of the template ( the overlap )
+     * @param nominalStart start of the sequence without any search
+     * @param searchRange maximum distance between nominalStart and the result
+     * @param seqLength length of a sequence, the result always leave room for a full sequence when possible
+     * @return the best start
+     */
+    public int bestOffset(double[] input, int inputLength, int templateStart, int templateLength, int nominalStart,
+                          int searchRange, int seqLength) {
+        int low = Math.max(0, nominalStart - searchRange);
+        int high = Math.min(nominalStart + searchRange, inputLength - Math.max(seqLength, templateLength));
+        if (high <= low) {
+            return Math.max(0, Math.min(nominalStart, high));
+        }
+
+        bruteForceEvaluations += high - low + 1;
+        bruteForceProducts += (long) (high - low + 1) * templateLength;
+        if (decimation == 1 || templateLength < 2 * decimation) {
+            fineEvaluations += high - low + 1;
+            fineProducts += (long) (high - low + 1) * templateLength;
+            return fftSearch(input, templateStart, templateLength, low, high);
+        }
+        return coarseToFineSearch(input, inputLength, templateStart, templateLength, low, high);
+    }
+
+    // Every offset of [low, high] at once with a FFT
+    private int fftSearch(double[] input, int templateStart, int templateLength, int low, int high) {
+        int lags = high - low + 1;
+        correlate(input, low, input, templateStart, templateLength, lags);
+
+        // Normalize by the energy of each candidate so loud parts don't always win, the energy slides in O(1)
+        double energy = 0;
+        for (int i = 0; i < templateLength; i++) {
+            energy += input[low + i] * input[low + i];
+        }
+        int best = low;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int lag = 0; lag < lags; lag++) {
+            if (lag > 0) {
+                double out = input[low + lag - 1];
+                double in = input[low + lag + templateLength - 1];
+                energy += in * in - out * out;
+            }
+            double score = correlation[lag] / Math.sqrt(Math.max(energy, 1e-12));
+            if (score > bestScore) {
+                bestScore = score;
+                best = low + lag;
+            }
+        }
+
+        return best;
+    }
+
+    // Correlate the decimated signals with a FFT, then refine the best coarse candidates at full rate
+    private int coarseToFineSearch(double[] input, int inputLength, int templateStart, int templateLength, int low,
+                                   int high) {
+        int coarseTemplateLength = templateLength / decimation;
+        int coarseLags = (high - low) / decimation + 1;
+        int coarseRegionLength = coarseLags + coarseTemplateLength - 1;
+        if (coarseRegion.length < coarseRegionLength) {
+            coarseRegion = new double[coarseRegionLength];
+        }
+        if (coarseTemplate.length < coarseTemplateLength) {
+            coarseTemplate = new double[coarseTemplateLength];
+        }
+        decimate(input, inputLength, templateStart, coarseTemplate, coarseTemplateLength);
+        decimate(input, inputLength, low, coarseRegion, coarseRegionLength);
+        correlate(coarseRegion, 0, coarseTemplate, 0, coarseTemplateLength, coarseLags);
+        coarseEvaluations += coarseLags;
+        coarseProducts += (long) coarseLags * coarseTemplateLength;
+
+        // Keep the COARSE_CANDIDATES best coarse offsets
+        Arrays.fill(candidateScores, Double.NEGATIVE_INFINITY);
+        double energy = 0;
+        for (int i = 0; i < coarseTemplateLength; i++) {
+            energy += coarseRegion[i] * coarseRegion[i];
+        }
+        for (int lag = 0; lag < coarseLags; lag++) {
+            if (lag > 0) {
+                double out = coarseRegion[lag - 1];
+                double in = coarseRegion[lag + coarseTemplateLength - 1];
+                energy += in * in - out * out;
+            }
+            double score = correlation[lag] / Math.sqrt(Math.max(energy, 1e-12));
+            int slot = COARSE_CANDIDATES;
+            while (slot > 0 && score > candidateScores[slot - 1]) {
+                slot--;
+            }
+            if (slot < COARSE_CANDIDATES) {
+                System.arraycopy(candidates, slot, candidates, slot + 1, COARSE_CANDIDATES - slot - 1);
+                System.arraycopy(candidateScores, slot, candidateScores, slot + 1, COARSE_CANDIDATES - slot - 1);
+                candidates[slot] = low + lag * decimation;
+                candidateScores[slot] = score;
+            }
+        }
+
+        // Refine around each candidate, an offset already tested around a better candidate is skipped
+        int best = candidates[0];
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < COARSE_CANDIDATES && candidateScores[c] > Double.NEGATIVE_INFINITY; c++) {
+            int from = Math.max(low, candidates[c] - refineRadius);
+            int to = Math.min(high, candidates[c] + refineRadius);
+            for (int start = from; start <= to; start++) {
+                if (refined(c, start)) {
+                    continue;
+                }
+                fineEvaluations++;
+                fineProducts += templateLength;
+                double score = normalizedCorrelation(input, start, input, templateStart, templateLength);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = start;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    // True if start is within refineRadius of one of the first count candidates
+    private boolean refined(int count, int start) {
+        for (int c = 0; c < count; c++) {
+            if (Math.abs(start - candidates[c]) <= refineRadius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // correlation[lag] = sum of template[i] * region[lag + i] for every lag of [0, lags) at once, with a FFT
+    private void correlate(double[] region, int regionStart, double[] template, int templateStart,
+                           int templateLength, int lags) {
+        // Every candidate is inside [regionStart, regionStart + regionLength)
+        int regionLength = lags + templateLength - 1;
+        int n = Math.max(2, PowerOfTwo.next(regionLength));
+        if (padded.length < n) {
+            padded = new double[n];
+            correlation = new double[n];
+            regionRe = new double[n / 2 + 1];
+            regionIm = new double[n / 2 + 1];
+            templateRe = new double[n / 2 + 1];
+            templateIm = new double[n / 2 + 1];
+        }
+        FFT fft = FFT.plan(n);
+        System.arraycopy(region, regionStart, padded, 0, regionLength);
+        Arrays.fill(padded, regionLength, n, 0);
+        fft.forward(padded, 0, regionRe, regionIm);
+        System.arraycopy(template, templateStart, padded, 0, templateLength);
+        Arrays.fill(padded, templateLength, n, 0);
+        fft.forward(padded, 0, templateRe, templateIm);
+
+        // The correlation is the inverse of region * conjugate(template), there is no wrap since n >= regionLength
+        for (int k = 0; k <= n / 2; k++) {
+            double re = regionRe[k] * templateRe[k] + regionIm[k] * templateIm[k];
+            double im = regionIm[k] * templateRe[k] - regionRe[k] * templateIm[k];
+            regionRe[k] = re;
+            regionIm[k] = im;
+        }
+        fft.inverse(regionRe, regionIm, correlation, 0);
+    }
+
+    // Mean of each block of decimation samples, it also acts as a (poor) low pass filter
+    private void decimate(double[] input, int inputLength, int start, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            double sum = 0;
+            int from = start + i * decimation;
+            int to = Math.min(from + decimation, inputLength);
+            for (int j = from; j < to; j++) {
+                sum += input[j];
+            }
+            result[i] = sum / decimation;
+        }
+    }
+
+    // Correlation of the candidate with the template, divided by the energy of the candidate
+    private static double normalizedCorrelation(double[] signal, int start, double[] template, int templateStart,
+                                                int length) {
+        double dot = 0;
+        double energy = 0;
+        for (int i = 0; i < length; i++) {
+            double s = signal[start + i];
+            dot += s * template[templateStart + i];
+            energy += s * s;
+        }
+        return dot / Math.sqrt(Math.max(energy, 1e-12));
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+
+/**
+ * Several echoes at once, with feedback between them ( feedback delay network ), block version used by
+ * Pauvocoder.multiEcho.
+ *
+ * @apiNote Each tap has its own delay line, a ring whose size is a power of two so that the positions are found with a
+ * mask instead of a modulo. What comes out of the lines is added to the input with the gain of each tap, and is sent
+ * back into the lines through the feedback matrix : feedback[i][j] is the part of the tap j written in the line i.
+ * Without a matrix the taps are only delayed copies of the input, a single tap gives the echo of Pauvocoder.echo up to
+ * rounding ( the SIMD kernels use fused multiply-adds, the samples can differ by about 1e-16 ), so compare them with a
+ * tolerance. The matrix should not amplify ( for example a rotation times a gain below 1 ), otherwise the echoes grow
+ * until they are clipped. The lines are kept between two blocks, the memory only depends on the delays.
+ */
+public final class DelayNetwork implements BlockProcessor {
+
+    private static final int OUTPUT_BLOCK = 4096;
+
+    private final int taps;
+    private final int[] delays;       // in samples
+    private final double[] gains;
+    private final double[][] feedback; // null for no feedback
+    private final double[][] lines;   // lines[tap][position & masks[tap]]
+    private final int[] masks;
+    private int position = 0;
+
+    private final double[] delayed;   // what comes out of each line for the current sample
+    private final double[] outBlock = new double[OUTPUT_BLOCK];
+
+    /**
+     * Taps without feedback
+     *
+     * @param delaysMs delay of each tap in msec
+     * @param gains gain of each tap
+     */
+    public DelayNetwork(double[] delaysMs, double[] gains) {
+        this(delaysMs, gains, null);
+    }
+
+    /**
+     * @param delaysMs delay of each tap in msec
+     * @param gains gain of each tap
+     * @param feedback taps x taps matrix, feedback[i][j] is the part of the tap j sent back in the line i, null for
+     *                 no feedback
+     */
+    public DelayNetwork(double[] delaysMs, double[] gains, double[][] feedback) {
+        if (delaysMs.length == 0) {
+            throw new IllegalArgumentException("At least one tap is needed.");
+        }
+        if (gains.length != delaysMs.length) {
+            throw new IllegalArgumentException("One gain is needed for each tap.");
+        }
+        if (feedback != null) {
+            if (feedback.length != delaysMs.length) {
+                throw new IllegalArgumentException("The feedback matrix must have one row for each tap.");
+            }
+            for (double[] row : feedback) {
+                if (row.length != delaysMs.length) {
+                    throw new IllegalArgumentException("The feedback matrix must have one column for each tap.");
+                }
+            }
+        }
+
+        taps = delaysMs.length;
+        delays = new int[taps];
+        lines = new double[taps][];
+        masks = new int[taps];
+        for (int t = 0; t < taps; t++) {
+            delays[t] = (int) (delaysMs[t] / 1000.0 * StdAudio.SAMPLE_RATE);
+            if (delays[t] < 1) {
+                throw new IllegalArgumentException("Delay must be at least one sample.");
+            }
+            // The line is read before it is written, a size of delay is enough
+            lines[t] = new double[PowerOfTwo.next(delays[t])];
+            masks[t] = lines[t].length - 1;
+        }
+        this.gains = gains.clone();
+        this.feedback = feedback == null ? null : Arrays.stream(feedback).map(double[]::clone).toArray(double[][]::new);
+        this.delayed = new double[taps];
+    }
+
+    @Override
+    public void process(double[] samples, int offset, int length, SampleSink out) {
+        int count = 0;
+        for (int i = offset; i < offset + length; i++) {
+            double sample = samples[i];
+
+            // Taps written delay samples ago
+            double value = sample;
+            for (int t = 0; t < taps; t++) {
+                delayed[t] = lines[t][(position - delays[t]) & masks[t]];
+                value += gains[t] * delayed[t];
+            }
+
+            // The input and the feedback go in the lines
+            for (int t = 0; t < taps; t++) {
+                double in = sample;
+                if (feedback != null) {
+                    double[] row = feedback[t];
+                    for (int j = 0; j < taps; j++) {
+                        in += row[j] * delayed[j];
+                    }
+                }
+                lines[t][position & masks[t]] = in;
+            }
+            position++;
+
+            // Limit values to the range [-1, 1]
+            if (value > 1.0) {
+                value = 1.0;
+            } else if (value < -1.0) {
+                value = -1.0;
+            }
+
+            outBlock[count++] = value;
+            if (count == OUTPUT_BLOCK) {
+                out.write(outBlock, 0, count);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            out.write(outBlock, 0, count);
+        }
+    }
+
+    @Override
+    public void flush(SampleSink out) {
+        // The output has the same length as the input like echo, what is left in the lines is dropped
+        for (double[] line : lines) {
+            Arrays.fill(line, 0);
+        }
+        position = 0;
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.Arrays;
+
+/**
+ * FFT of real signals, used by the cross-correlation search and the spectrogram.
+ *
+ * @apiNote A plan is made once per size ( FFT.plan ) and keeps the twiddle factors and the bit reversal swaps, so a
+ * transform done for every frame only costs the butterflies and allocates nothing : the results are written in the
+ * buffers of the caller. The n real samples are packed in n/2 complex ones ( even samples in the real part, odd ones
+ * in the imaginary part ), transformed with radix-4 passes ( plus one radix-2 pass when needed ) and split back into
+ * the n/2 + 1 bins of the real signal. The plans can be shared between threads.
+ */
+public final class FFT {
+
+    // plans[log2(size)]
+    private static final FFT[] plans = new FFT[31];
+
+    private final int size;      // number of real samples
+    private final int half;      // size / 2, length of the complex transform
+    private final double[] cos;  // cos(-2*PI*j/size)
+    private final double[] sin;  // sin(-2*PI*j/size)
+    private final int[] swaps;   // pairs of indexes exchanged by the bit reversal of half values
+
+    private FFT(int size) {
+        this.size = size;
+        this.half = size / 2;
+
+        // The complex transform uses j < 3*size/4, the split of the real signal j < size/2
+        cos = new double[3 * size / 4];
+        sin = new double[cos.length];
+        for (int j = 0; j < cos.length; j++) {
+            double angle = -2 * Math.PI * j / size;
+            cos[j] = Math.cos(angle);
+            sin[j] = Math.sin(angle);
+        }
+
+        int count = 0;
+        int[] pairs = new int[half];
+        for (int i = 1, j = 0; i < half; i++) {
+            int bit = half >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                pairs[count++] = i;
+                pairs[count++] = j;
+            }
+        }
+        swaps = Arrays.copyOf(pairs, count);
+    }
+
+    /**
+     * Plan for the transforms of size real samples, made on the first call
+     *
+     * @param size number of real samples, a power of two, at least 2
+     * @return the plan
+     */
+    public static synchronized FFT plan(int size) {
+        if (size < 2 || !PowerOfTwo.is(size)) {
+            throw new IllegalArgumentException("FFT length must be a power of two");
+        }
+        int log = Integer.numberOfTrailingZeros(size);
+        if (plans[log] == null) {
+            plans[log] = new FFT(size);
+        }
+        return plans[log];
+    }
+
+    /**
+     * @return number of real samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Transform input[offset, offset + size) into the bins 0 to size/2 ( included )
+     *
+     * @param input the real samples, not modified
+     * @param offset first sample
+     * @param re real part of the bins, at least size/2 + 1 long
+     * @param im imaginary part of the bins, at least size/2 + 1 long
+     */
+    public void forward(double[] input, int offset, double[] re, double[] im) {
+        checkBins(re, im);
+        for (int j = 0; j < half; j++) {
+            re[j] = input[offset + 2 * j];
+            im[j] = input[offset + 2 * j + 1];
+        }
+        complex(re, im, false);
+
+        // Z = E + iO where E and O are the transforms of the even and odd samples, X[k] = E[k] + W^k O[k]
+        double r0 = re[0];
+        double i0 = im[0];
+        re[0] = r0 + i0;
+        im[0] = 0;
+        re[half] = r0 - i0;
+        im[half] = 0;
+        for (int k = 1, l = half - 1; k <= l; k++, l--) {
+            double eRe = (re[k] + re[l]) / 2;
+            double eIm = (im[k] - im[l]) / 2;
+            double oRe = (im[k] + im[l]) / 2;
+            double oIm = (re[l] - re[k]) / 2;
+            double tRe = cos[k] * oRe - sin[k] * oIm;
+            double tIm = cos[k] * oIm + sin[k] * oRe;
+            re[k] = eRe + tRe;
+            im[k] = eIm + tIm;
+            // X[size/2 - k] = conjugate(E[k] - W^k O[k])
+            re[l] = eRe - tRe;
+            im[l] = tIm - eIm;
+        }
+    }
+
+    /**
+     * Transform the bins 0 to size/2 back into output[offset, offset + size), divided by size
+     *
+     * @apiNote The bins are used as work space, they are lost. The imaginary parts of the bins 0 and size/2 are
+     * ignored, they are 0 for a real signal.
+     * @param re real part of the bins, at least size/2 + 1 long
+     * @param im imaginary part of the bins, at least size/2 + 1 long
+     * @param output receives the real samples
+     * @param offset first sample written
+     */
+    public void inverse(double[] re, double[] im, double[] output, int offset) {
+        checkBins(re, im);
+
+        // Rebuild Z = E + iO from X[k] and X[size/2 - k]
+        double x0 = re[0];
+        double xHalf = re[half];
+        re[0] = (x0 + xHalf) / 2;
+        im[0] = (x0 - xHalf) / 2;
+        for (int k = 1, l = half - 1; k <= l; k++, l--) {
+            double eRe = (re[k] + re[l]) / 2;
+            double eIm = (im[k] - im[l]) / 2;
+            double dRe = (re[k] - re[l]) / 2;
+            double dIm = (im[k] + im[l]) / 2;
+            // O = (X[k] - conjugate(X[size/2 - k])) / 2 / W^k
+            double oRe = dRe * cos[k] + dIm * sin[k];
+            double oIm = dIm * cos[k] - dRe * sin[k];
+            re[k] = eRe - oIm;
+            im[k] = eIm + oRe;
+            re[l] = eRe + oIm;
+            im[l] = oRe - eIm;
+        }
+        complex(re, im, true);
+
+        double scale = 1.0 / half;
+        for (int j = 0; j < half; j++) {
+            output[offset + 2 * j] = re[j] * scale;
+            output[offset + 2 * j + 1] = im[j] * scale;
+        }
+    }
+
+    /**
+     * Compute the discrete fourier transform of (re, im) in place
+     *
+     * @param re real part, length must be a power of two
+     * @param im imaginary part, same length as re
+     * @param inverse true for the inverse transform (the result is divided by the length)
+     */
+    public static void transform(double[] re, double[] im, boolean inverse) {
+        int n = re.length;
+        if (n != im.length || !PowerOfTwo.is(n)) {
+            throw new IllegalArgumentException("FFT length must be a power of two");
+        }
+        if (n == 1) {
+            return;
+        }
+
+        // The complex transform of a plan has half its size
+        plan(2 * n).complex(re, im, inverse);
+        if (inverse) {
+            for (int i = 0; i < n; i++) {
+                re[i] /= n;
+                im[i] /= n;
+            }
+        }
+    }
+
+    // Complex transform of (re, im)[0, half) in place, not divided by half for the inverse
+    private void complex(double[] re, double[] im, boolean inverse) {
+        for (int s = 0; s < swaps.length; s += 2) {
+            int i = swaps[s];
+            int j = swaps[s + 1];
+            double tmp = re[i]; re[i] = re[j]; re[j] = tmp;
+            tmp = im[i]; im[i] = im[j]; im[j] = tmp;
+        }
+
+        // With an odd number of radix-2 passes the first one is done alone, its twiddle is 1
+        int h = 1;
+        if ((Integer.numberOfTrailingZeros(half) & 1) == 1) {
+            for (int a = 0; a < half; a += 2) {
+                double bRe = re[a + 1];
+                double bIm = im[a + 1];
+                re[a + 1] = re[a] - bRe;
+                im[a + 1] = im[a] - bIm;
+                re[a] += bRe;
+                im[a] += bIm;
+            }
+            h = 2;
+        }
+
+        // Radix-4 passes, each one does two radix-2 passes : blocks of 4h from four transforms of h
+        double sign = inverse ? -1 : 1;
+        for (; 4 * h <= half; h *= 4) {
+            int stride = size / (4 * h);
+            for (int start = 0; start < half; start += 4 * h) {
+                for (int k = 0; k < h; k++) {
+                    int a = start + k;
+                    int b = a + h;
+                    int c = b + h;
+                    int d = c + h;
+                    int j1 = k * stride;
+                    int j2 = 2 * j1;
+                    int j3 = 3 * j1;
+
+                    // B * w^2k, C * w^k, D * w^3k
+                    double bRe = re[b] * cos[j2] - im[b] * sign * sin[j2];
+                    double bIm = re[b] * sign * sin[j2] + im[b] * cos[j2];
+                    double cRe = re[c] * cos[j1] - im[c] * sign * sin[j1];
+                    double cIm = re[c] * sign * sin[j1] + im[c] * cos[j1];
+                    double dRe = re[d] * cos[j3] - im[d] * sign * sin[j3];
+                    double dIm = re[d] * sign * sin[j3] + im[d] * cos[j3];
+
+                    double sumRe = re[a] + bRe;
+                    double sumIm = im[a] + bIm;
+                    double diffRe = re[a] - bRe;
+                    double diffIm = im[a] - bIm;
+                    double cdSumRe = cRe + dRe;
+                    double cdSumIm = cIm + dIm;
+                    // (C - D) multiplied by -i, or by i for the inverse
+                    double rotRe = sign * (cIm - dIm);
+                    double rotIm = sign * (dRe - cRe);
+
+                    re[a] = sumRe + cdSumRe;
+                    im[a] = sumIm + cdSumIm;
+                    re[b] = diffRe + rotRe;
+                    im[b] = diffIm + rotIm;
+                    re[c] = sumRe - cdSumRe;
+                    im[c] = sumIm - cdSumIm;
+                    re[d] = diffRe - rotRe;
+                    im[d] = diffIm - rotIm;
+                }
+            }
+        }
+    }
+
+    private void checkBins(double[] re, double[] im) {
+        if (re.length <= half || im.length <= half) {
+            throw new IllegalArgumentException("The bins must hold size/2 + 1 values");
+        }
+    }
+}
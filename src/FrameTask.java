@@ -0,0 +1,132 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copy (or window and add) a range of sequences of the input into the output, used by vocodeSimple and
+ * vocodeSimpleOver. The range is split in two until it is small enough, so it can run on a ForkJoinPool.
+ *
+ * @apiNote Only two consecutive sequences can overlap ( the overlap is at most half a sequence ). The first sequence
+ * of a range is added to a seam buffer instead of the output for its first oLap samples, this way two tasks never
+ * write the same sample. The seams are added to the output once every task is done, in the same order as the
+ * serial loop so the result is the same with the scalar kernels. The SIMD kernels use fused multiply-adds : the serial
+ * loop rounds output + input * window once where a seam rounds the product first, so a seam sample can differ by one
+ * ulp.
+ */
+final class FrameTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // Minimum number of sequences done by one task
+    private static final int MIN_SEQUENCES = 16;
+
+    private final double[] input;
+    private final double[] output;
+    private final double[] window; // null for a plain copy (vocodeSimple)
+    private final int seqLength;
+    private final int hopSize;     // distance between two sequences in the input
+    private final int outputHop;   // distance between two sequences in the output
+    private final int oLap;
+    private final int from;
+    private final int to;
+    private final int threshold;
+    private final double[][] seams; // seams[seq], filled for the first sequence of each task
+
+    private FrameTask(double[] input, double[] output, double[] window, int seqLength, int hopSize, int outputHop,
+                      int oLap, int from, int to, int threshold, double[][] seams) {
+        this.input = input;
+        this.output = output;
+        this.window = window;
+        this.seqLength = seqLength;
+        this.hopSize = hopSize;
+        this.outputHop = outputHop;
+        this.oLap = oLap;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+        this.seams = seams;
+    }
+
+    /**
+     * Process the sequences [0, numSequences)
+     *
+     * @param pool the pool used to split the work, null to do everything in the current thread
+     * @param input the input
+     * @param output the output, sequences are added to it ( or copied if window is null )
+     * @param window window of a sequence, null for a plain copy
+     * @param seqLength length of a sequence
+     * @param hopSize distance between two sequences in the input
+     * @param outputHop distance between two sequences in the output
+     * @param oLap overlap between two sequences in the output, 0 if they don't overlap
+     * @param numSequences number of sequences
+     */
+    static void run(ForkJoinPool pool, double[] input, double[] output, double[] window, int seqLength, int hopSize,
+                    int outputHop, int oLap, int numSequences) {
+        if (pool == null || numSequences <= MIN_SEQUENCES) {
+            processRange(input, output, window, seqLength, hopSize, outputHop, 0, numSequences, null);
+            return;
+        }
+
+        // A few tasks per worker so that a slow worker doesn't keep the others waiting
+        int threshold = Math.max(MIN_SEQUENCES, numSequences / (4 * pool.getParallelism()));
+        double[][] seams = oLap > 0 ? new double[numSequences][] : null;
+        pool.invoke(new FrameTask(input, output, window, seqLength, hopSize, outputHop, oLap, 0, numSequences,
+                threshold, seams));
+
+        // Merge the seams in the order of the sequences
+        if (seams != null) {
+            for (int seq = 0; seq < numSequences; seq++) {
+                double[] seam = seams[seq];
+                if (seam == null) {
+                    continue;
+                }
+                int outputStart = seq * outputHop;
+                int length = Math.min(seam.length, output.length - outputStart);
+                for (int i = 0; i < length; i++) {
+                    output[outputStart + i] += seam[i];
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= threshold) {
+            double[] seam = null;
+            if (seams != null && from > 0) {
+                seam = new double[oLap];
+                seams[from] = seam;
+            }
+            processRange(input, output, window, seqLength, hopSize, outputHop, from, to, seam);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new FrameTask(input, output, window, seqLength, hopSize, outputHop, oLap, from, middle, threshold, seams),
+                new FrameTask(input, output, window, seqLength, hopSize, outputHop, oLap, middle, to, threshold, seams));
+    }
+
+    // The serial loop, the start of the first sequence goes to seam when it is given
+    private static void processRange(double[] input, double[] output, double[] window, int seqLength, int hopSize,
+                                     int outputHop, int from, int to, double[] seam) {
+        for (int seq = from; seq < to; seq++) {
+            int inputStart = seq * hopSize;
+            int outputStart = seq * outputHop;
+
+            // The bounds are checked once for the whole sequence, not per sample
+            int length = Math.min(seqLength, Math.min(input.length - inputStart, output.length - outputStart));
+            if (length <= 0) {
+                continue;
+            }
+
+            if (window == null) {
+                System.arraycopy(input, inputStart, output, outputStart, length);
+            } else if (seq == from && seam != null) {
+                int head = Math.min(length, seam.length);
+                Kernels.multiplyAccumulate(seam, 0, input, inputStart, window, 0, head);
+                Kernels.multiplyAccumulate(output, outputStart + head, input, inputStart + head, window, head,
+                        length - head);
+            } else {
+                Kernels.multiplyAccumulate(output, outputStart, input, inputStart, window, 0, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,493 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Many jobs ( input, freqScale, stages ) in one JVM on a fixed number of workers ( pauvocoder --jobs ... ), for the
+ * thousands of short clips where starting a JVM per file would cost more than the vocoding.
+ *
+ * @apiNote A reader thread loads the inputs in a bounded queue ahead of the workers, it waits when the queue is full
+ * so at most 2 * workers jobs are waiting in memory. An input is read once for all its jobs, which share its samples
+ * and its cache key ( hashed by the first worker that needs it ). The workers only compute ( Batch.runStages ), the
+ * outputs are written by a writer thread with its own bounded queue : when the disk is late the worker writes itself.
+ * So reading, computing and writing overlap, and the memory stays bounded whatever the number of jobs. The latency of
+ * a job goes from the start of the read of its input to the end of its last write.
+ * Whatever a job throws, even an Error, only this job fails : the threads go on with the next ones and run returns.
+ */
+public final class JobRunner {
+
+    static final String USAGE = "usage: pauvocoder --jobs <dir|manifest> [--workers <n>] [--scales <freqScale,...>]"
+            + " [--stages <stage,...>] [--out <dir>] [--cache <dir>] [--summary <file>]"
+            + " [--cross-decimation <n> [--cross-radius <n>]]\n"
+            + "       dir: every .wav with every scale, manifest: one job per line, <input.wav> <freqScale> [stage,...]";
+
+    /**
+     * One input with one freqScale
+     */
+    static final class Job {
+        final int index;
+        final String input;
+        final double freqScale;
+        final EnumSet<Batch.Stage> stages;
+
+        Job(int index, String input, double freqScale, EnumSet<Batch.Stage> stages) {
+            this.index = index;
+            this.input = input;
+            this.freqScale = freqScale;
+            this.stages = stages;
+        }
+
+        @Override
+        public String toString() {
+            return input + " x" + freqScale;
+        }
+    }
+
+    // An input read once for all its jobs
+    private static final class Source {
+        final double[] samples;
+        final long start;
+        private String key; // StageCache.key of the samples, hashed on the first call
+
+        Source(double[] samples, long start) {
+            this.samples = samples;
+            this.start = start;
+        }
+
+        synchronized String key() {
+            if (key == null) {
+                key = StageCache.key(samples);
+            }
+            return key;
+        }
+    }
+
+    // A job whose input is read, job null marks the end of the queue
+    private static final class Loaded {
+        final Job job;
+        final Source source;
+
+        Loaded(Job job, Source source) {
+            this.job = job;
+            this.source = source;
+        }
+    }
+
+    private static final Loaded END = new Loaded(null, null);
+
+    private final List<Job> jobs;
+    private final int workers;
+    private final String outDir;
+    private final String summaryFile;
+    private final StageCache cache; // null for no cache
+    private final int crossDecimation; // search of the cross dilatation, see Batch
+    private final int crossRadius;
+    private Function<String, double[]> reader = StdAudio::read;
+
+    // Written once per job by the thread that ends it, read after every thread is stopped
+    private final long[] latencies;
+    private final String[] failures;
+    private final AtomicLongArray stageNanos = new AtomicLongArray(Batch.Stage.values().length);
+    private final AtomicLongArray stageSamples = new AtomicLongArray(Batch.Stage.values().length);
+
+    private JobRunner(List<Job> jobs, int workers, String outDir, String summaryFile, StageCache cache,
+                      int crossDecimation, int crossRadius) {
+        this.jobs = jobs;
+        this.workers = workers;
+        this.outDir = outDir;
+        this.summaryFile = summaryFile;
+        this.cache = cache;
+        this.crossDecimation = crossDecimation;
+        this.crossRadius = crossRadius;
+        this.latencies = new long[jobs.size()];
+        this.failures = new String[jobs.size()];
+    }
+
+    /**
+     * Read the flags and list the jobs
+     *
+     * @param args arguments of main, starting with --jobs
+     * @return the runner
+     */
+    static JobRunner parse(String[] args) {
+        String source = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        EnumSet<Batch.Stage> stages = EnumSet.allOf(Batch.Stage.class);
+        double[] scales = null;
+        String outDir = null;
+        String summaryFile = null;
+        String cacheDir = System.getProperty("pauvocoder.cache");
+        int crossDecimation = 1;
+        int crossRadius = -1;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jobs":
+                    source = value(args, ++i);
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(value(args, ++i));
+                    if (workers < 1) {
+                        throw new IllegalArgumentException("at least one worker is needed");
+                    }
+                    break;
+                case "--stages":
+                    stages = parseStages(value(args, ++i));
+                    break;
+                case "--scales":
+                    String[] values = value(args, ++i).split(",");
+                    scales = new double[values.length];
+                    for (int s = 0; s < values.length; s++) {
+                        scales[s] = parseScale(values[s]);
+                    }
+                    break;
+                case "--out":
+                    outDir = value(args, ++i);
+                    break;
+                case "--cache":
+                    cacheDir = value(args, ++i);
+                    break;
+                case "--summary":
+                    summaryFile = value(args, ++i);
+                    break;
+                case "--cross-decimation":
+                    crossDecimation = Batch.parseCount(args, ++i, 1);
+                    break;
+                case "--cross-radius":
+                    crossRadius = Batch.parseCount(args, ++i, 0);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown argument " + args[i]);
+            }
+        }
+        if (source == null) {
+            throw new IllegalArgumentException("--jobs is needed");
+        }
+
+        List<Job> jobs = new ArrayList<>();
+        File sourceFile = new File(source);
+        if (sourceFile.isDirectory()) {
+            if (scales == null) {
+                throw new IllegalArgumentException("--scales is needed with a directory");
+            }
+            File[] wavs = sourceFile.listFiles((dir, name) -> name.toLowerCase(Locale.ROOT).endsWith(".wav"));
+            Arrays.sort(wavs);
+            for (File wav : wavs) {
+                for (double freqScale : scales) {
+                    jobs.add(new Job(jobs.size(), wav.getPath(), freqScale, stages));
+                }
+            }
+        } else {
+            readManifest(sourceFile, stages, jobs);
+        }
+        if (jobs.isEmpty()) {
+            throw new IllegalArgumentException("no job in " + source);
+        }
+        StageCache cache = cacheDir != null ? StageCache.open(cacheDir) : null;
+        return new JobRunner(jobs, workers, outDir, summaryFile, cache, crossDecimation,
+                Batch.crossRadius(crossDecimation, crossRadius));
+    }
+
+    // One job per line : input freqScale [stages], # starts a comment, the inputs are relative to the manifest
+    private static void readManifest(File manifest, EnumSet<Batch.Stage> defaultStages, List<Job> jobs) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not read manifest '" + manifest + "'", e);
+        }
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n);
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+            if (fields.length < 2 || fields.length > 3) {
+                throw new IllegalArgumentException(manifest + ":" + (n + 1) + " : <input.wav> <freqScale> [stages]");
+            }
+            File input = new File(fields[0]);
+            if (!input.isAbsolute() && manifest.getParentFile() != null) {
+                input = new File(manifest.getParentFile(), fields[0]);
+            }
+            EnumSet<Batch.Stage> stages = fields.length == 3 ? parseStages(fields[2]) : defaultStages;
+            jobs.add(new Job(jobs.size(), input.getPath(), parseScale(fields[1]), stages));
+        }
+    }
+
+    private static EnumSet<Batch.Stage> parseStages(String flags) {
+        EnumSet<Batch.Stage> stages = EnumSet.noneOf(Batch.Stage.class);
+        for (String flag : flags.split(",")) {
+            stages.add(Batch.Stage.of(flag.trim()));
+        }
+        return stages;
+    }
+
+    private static double parseScale(String value) {
+        double freqScale = Double.parseDouble(value.trim());
+        if (freqScale <= 0) {
+            throw new IllegalArgumentException("freqScale must be greater than 0");
+        }
+        return freqScale;
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+
+    /**
+     * Read the inputs with something else than StdAudio.read, for the tests
+     *
+     * @param reader from the name of an input to its samples
+     */
+    void readWith(Function<String, double[]> reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Run every job and print the summary ( also written to the summary file if there is one )
+     *
+     * @return number of jobs that failed
+     */
+    int run() {
+        if (outDir != null) {
+            new File(outDir).mkdirs();
+        }
+        // The reader, the workers and the writer run stages at the same time
+        StageMetrics.withoutPeakHeap();
+        long start = System.nanoTime();
+
+        BlockingQueue<Loaded> loaded = new ArrayBlockingQueue<>(2 * workers);
+        ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(2 * workers), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        Thread reading = new Thread(() -> readAll(loaded), "job-reader");
+        reading.start();
+        List<Thread> computing = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            Thread worker = new Thread(() -> work(loaded, writer), "job-worker-" + w);
+            worker.start();
+            computing.add(worker);
+        }
+
+        try {
+            reading.join();
+            for (Thread worker : computing) {
+                worker.join();
+            }
+            writer.shutdown();
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.shutdownNow();
+        }
+
+        String summary = summary(System.nanoTime() - start);
+        System.out.print(summary);
+        if (summaryFile != null) {
+            try {
+                Files.write(new File(summaryFile).toPath(), summary.getBytes(StandardCharsets.UTF_8));
+            }
+            catch (IOException e) {
+                System.out.println("could not write summary '" + summaryFile + "' : " + e.getMessage());
+            }
+        }
+
+        int failed = 0;
+        for (String failure : failures) {
+            if (failure != null) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    // Reader thread : put waits while the workers are late
+    private void readAll(BlockingQueue<Loaded> loaded) {
+        try {
+            for (List<Job> group : byInput()) {
+                long start = System.nanoTime();
+                Source source;
+                try {
+                    source = new Source(reader.apply(group.get(0).input), start);
+                }
+                catch (Throwable e) {
+                    for (Job job : group) {
+                        fail(job, start, e);
+                    }
+                    continue;
+                }
+                for (Job job : group) {
+                    loaded.put(new Loaded(job, source));
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            // Whatever happened the workers must stop, or run would wait for them forever
+            boolean interrupted = Thread.interrupted();
+            for (int w = 0; w < workers; w++) {
+                while (true) {
+                    try {
+                        loaded.put(END);
+                        break;
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // The jobs of each input, in the order of their first job
+    private List<List<Job>> byInput() {
+        Map<String, List<Job>> groups = new LinkedHashMap<>();
+        for (Job job : jobs) {
+            groups.computeIfAbsent(job.input, input -> new ArrayList<>()).add(job);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    // Worker thread : compute, then give the outputs to the writer
+    private void work(BlockingQueue<Loaded> loaded, ThreadPoolExecutor writer) {
+        try {
+            while (true) {
+                Loaded next = loaded.take();
+                if (next.job == null) {
+                    return;
+                }
+                Job job = next.job;
+                Source source = next.source;
+                Batch.Outputs outputs;
+                try {
+                    String inputKey = cache != null ? source.key() : null;
+                    // The workers already keep every core busy, each job stays in its thread
+                    outputs = Batch.runStages(source.samples, inputKey, job.freqScale, job.stages, cache, null,
+                            crossDecimation, crossRadius);
+                }
+                catch (Throwable e) {
+                    fail(job, source.start, e);
+                    continue;
+                }
+                for (int s = 0; s < outputs.stageNanos.length; s++) {
+                    stageNanos.addAndGet(s, outputs.stageNanos[s]);
+                    stageSamples.addAndGet(s, outputs.stageSamples[s]);
+                }
+                writer.execute(() -> write(job, outputs, source.start));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(Job job, Batch.Outputs outputs, long start) {
+        try {
+            String outPutFile = Batch.prefix(job.input, outDir) + job.freqScale + "_";
+            for (int i = 0; i < outputs.wavs.size(); i++) {
+                StdAudio.save(outPutFile + outputs.suffixes.get(i) + ".wav", outputs.wavs.get(i));
+            }
+            latencies[job.index] = System.nanoTime() - start;
+        }
+        catch (Throwable e) {
+            fail(job, start, e);
+        }
+    }
+
+    private void fail(Job job, long start, Throwable e) {
+        latencies[job.index] = System.nanoTime() - start;
+        failures[job.index] = e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    // Throughput, per stage times, latency percentiles of the jobs that worked and the failures
+    private String summary(long nanos) {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+
+        long[] done = new long[jobs.size()];
+        int count = 0;
+        for (Job job : jobs) {
+            if (failures[job.index] == null) {
+                done[count++] = latencies[job.index];
+            }
+        }
+        long samples = stageSamples.get(Batch.Stage.RESAMPLE.ordinal());
+        double seconds = nanos / 1e9;
+        double audioSeconds = (double) samples / StdAudio.SAMPLE_RATE;
+        out.println(String.format(Locale.ROOT, "Jobs : %d réussis, %d échoués en %.1f s avec %d workers",
+                count, jobs.size() - count, seconds, workers));
+        out.println(String.format(Locale.ROOT, "Débit : %.1f jobs/s, %.1f s d'audio, temps réel x%.1f",
+                jobs.size() / seconds, audioSeconds, audioSeconds / seconds));
+
+        if (count > 0) {
+            long[] sorted = Arrays.copyOf(done, count);
+            Arrays.sort(sorted);
+            out.println(String.format(Locale.ROOT, "Latence : p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    percentile(sorted, 50) / 1e6, percentile(sorted, 90) / 1e6, percentile(sorted, 99) / 1e6,
+                    sorted[count - 1] / 1e6));
+        }
+
+        out.println("Temps cumulé par étape :");
+        for (Batch.Stage stage : Batch.Stage.values()) {
+            long stageSampleCount = stageSamples.get(stage.ordinal());
+            if (stageSampleCount > 0) {
+                double ms = stageNanos.get(stage.ordinal()) / 1e6;
+                out.println(String.format(Locale.ROOT, "    %-10s %10.1f ms  temps réel x%.0f", stage.flag, ms,
+                        stageSampleCount / (double) StdAudio.SAMPLE_RATE / Math.max(ms / 1e3, 1e-9)));
+            }
+        }
+
+        if (cache != null) {
+            out.println("Cache : " + cache);
+        }
+
+        if (count < jobs.size()) {
+            out.println("Échecs :");
+            for (Job job : jobs) {
+                if (failures[job.index] != null) {
+                    out.println("    " + job + " : " + failures[job.index]);
+                }
+            }
+        }
+        out.flush();
+        return text.toString();
+    }
+
+    // Nearest rank percentile of sorted values
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Inner loops of the vocoder ( window multiply-accumulate, gain and clipping ) on contiguous arrays.
+ *
+ * @apiNote There are two versions : a scalar one, always available, and a SIMD one written with the Vector API
+ * (SimdKernels). The SIMD version is only used when the jdk.incubator.vector module is there, the JVM must be started
+ * with --add-modules jdk.incubator.vector ( and compiled with it too ). Set the property -Dvocoder.simd=false or call
+ * setSimd(false) to force the scalar version. The speed of both is compared by the JMH benchmarks of bench/ ( the
+ * simd parameter ).
+ * The callers give the exact number of samples, the loops don't check anything per sample.
+ */
+public final class Kernels {
+
+    /**
+     * One implementation of the loops
+     */
+    public interface Impl {
+        /** dst[dstOff + i] += src[srcOff + i] * window[winOff + i] */
+        void multiplyAccumulate(double[] dst, int dstOff, double[] src, int srcOff, double[] window, int winOff, int length);
+
+        /** dst[dstOff + i] += src[srcOff + i] * gain */
+        void addScaled(double[] dst, int dstOff, double[] src, int srcOff, double gain, int length);
+
+        /** dst[off + i] = max(min, min(max, dst[off + i])) */
+        void clip(double[] dst, int off, int length, double min, double max);
+    }
+
+    /**
+     * Plain loops, the JIT may still vectorize them
+     */
+    public static final class Scalar implements Impl {
+        @Override
+        public void multiplyAccumulate(double[] dst, int dstOff, double[] src, int srcOff, double[] window, int winOff,
+                                       int length) {
+            for (int i = 0; i < length; i++) {
+                dst[dstOff + i] += src[srcOff + i] * window[winOff + i];
+            }
+        }
+
+        @Override
+        public void addScaled(double[] dst, int dstOff, double[] src, int srcOff, double gain, int length) {
+            for (int i = 0; i < length; i++) {
+                dst[dstOff + i] += src[srcOff + i] * gain;
+            }
+        }
+
+        @Override
+        public void clip(double[] dst, int off, int length, double min, double max) {
+            for (int i = off; i < off + length; i++) {
+                if (dst[i] > max) {
+                    dst[i] = max;
+                } else if (dst[i] < min) {
+                    dst[i] = min;
+                }
+            }
+        }
+    }
+
+    private static final Impl SCALAR = new Scalar();
+    private static final Impl SIMD = loadSimd();
+
+    private static volatile Impl current =
+            SIMD != null && Boolean.parseBoolean(System.getProperty("vocoder.simd", "true")) ? SIMD : SCALAR;
+
+    private Kernels() {
+        // can not instantiate
+    }
+
+    // The Vector API is an incubator module, it may be missing at runtime
+    private static Impl loadSimd() {
+        try {
+            return (Impl) Class.forName("SimdKernels").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the Vector API version could be loaded
+     */
+    public static boolean isSimdAvailable() {
+        return SIMD != null;
+    }
+
+    /**
+     * @return true if the Vector API version is used
+     */
+    public static boolean isSimd() {
+        return current == SIMD;
+    }
+
+    /**
+     * Choose the version used by the vocoder
+     *
+     * @param simd true for the Vector API version, ignored if it is not available
+     */
+    public static void setSimd(boolean simd) {
+        current = simd && SIMD != null ? SIMD : SCALAR;
+    }
+
+    /**
+     * dst[dstOff + i] += src[srcOff + i] * window[winOff + i] for i in [0, length)
+     */
+    public static void multiplyAccumulate(double[] dst, int dstOff, double[] src, int srcOff, double[] window,
+                                          int winOff, int length) {
+        current.multiplyAccumulate(dst, dstOff, src, srcOff, window, winOff, length);
+    }
+
+    /**
+     * dst[dstOff + i] += src[srcOff + i] * gain for i in [0, length)
+     */
+    public static void addScaled(double[] dst, int dstOff, double[] src, int srcOff, double gain, int length) {
+        current.addScaled(dst, dstOff, src, srcOff, gain, length);
+    }
+
+    /**
+     * Limit dst[off, off + length) to [min, max]
+     */
+    public static void clip(double[] dst, int off, int length, double min, double max) {
+        current.clip(dst, off, length, min, max);
+    }
+}
@@ -1,11 +1,35 @@
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 import static java.lang.System.exit;
 
 public class Pauvocoder {
 
     public static void main(String[] args) {
+        // Mode batch : ni pause, ni son, ni fenêtre, seulement les fichiers
+        if (args.length > 0 && args[0].equals("--batch")) {
+            try {
+                exit(Batch.parse(args).run() == 0 ? 0 : 1);
+            }
+            catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage() + "\n" + Batch.USAGE + "\n");
+                exit(1);
+            }
+        }
+
+        // Mode jobs : plusieurs fichiers en parallèle, avec un résumé à la fin
+        if (args.length > 0 && args[0].equals("--jobs")) {
+            try {
+                exit(JobRunner.parse(args).run() == 0 ? 0 : 1);
+            }
+            catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage() + "\n" + JobRunner.USAGE + "\n");
+                exit(1);
+            }
+        }
+
         if (args.length < 2) {
-            System.out.println("usage: pauvocoder <input.wav> <freqScale>\n");
+            System.out.println("usage: pauvocoder <input.wav> <freqScale>\n" + Batch.USAGE + "\n" + JobRunner.USAGE
+                    + "\n");
             exit(1);
         }
 
@@ -15,16 +39,25 @@ public class Pauvocoder {
 
         Scanner scanner = new Scanner(System.in);
 
+        // Résultats des étapes gardés sur le disque avec -Dpauvocoder.cache=<dossier>
+        StageCache cache = StageCache.fromProperties();
+
         // Étape 1 : Lecture et affichage du fichier original
         double[] inputWav = StdAudio.read(wavInFile);
         System.out.println("Waveform originale chargée.");
+
+        // Vue d'ensemble du fichier, le résumé est gardé en cache pour la prochaine fois
+        WaveformPyramid pyramid = WaveformPyramid.forFile(wavInFile, inputWav);
+        displayWaveform(pyramid, 0, inputWav.length);
         joue(inputWav);
 
         // Pause dans la console
         waitForNextStep(scanner, "Étape 1 : Appuyez sur Entrée pour continuer...");
 
         // Étape 2 : Resample test
-        double[] newPitchWav = resample(inputWav, freqScale);
+        String inputKey = cache != null ? StageCache.key(inputWav) : null;
+        String resampleKey = StageCache.key(inputKey, "resample", freqScale);
+        double[] newPitchWav = StageCache.cached(cache, resampleKey, () -> resample(inputWav, freqScale));
         StdAudio.save(outPutFile + "Resampled.wav", newPitchWav);
         System.out.println("Waveform resamplée.");
         joue(newPitchWav);
@@ -32,7 +65,8 @@ public class Pauvocoder {
         waitForNextStep(scanner, "Étape 2 : Appuyez sur Entrée pour continuer...");
 
         // Étape 3 : Dilatation simple
-        double[] outputWav = vocodeSimple(newPitchWav, 1.0/freqScale);
+        double[] outputWav = StageCache.cached(cache, StageCache.key(resampleKey, "simple", 1.0 / freqScale),
+                () -> vocodeSimple(newPitchWav, 1.0 / freqScale));
         StdAudio.save(outPutFile + "Simple.wav", outputWav);
         System.out.println("Waveform dilatée (simple).");
         joue(outputWav);
@@ -40,7 +74,8 @@ public class Pauvocoder {
         waitForNextStep(scanner, "Étape 3 : Appuyez sur Entrée pour continuer...");
 
         // Étape 4 : Dilatation avec overlapping
-        outputWav = vocodeSimpleOver(newPitchWav, 1.0 / freqScale);
+        outputWav = StageCache.cached(cache, StageCache.key(resampleKey, "over", 1.0 / freqScale),
+                () -> vocodeSimpleOver(newPitchWav, 1.0 / freqScale));
         StdAudio.save(outPutFile + "SimpleOver.wav", outputWav);
         System.out.println("Waveform dilatée avec overlapping.");
         joue(outputWav);
@@ -48,20 +83,41 @@ public class Pauvocoder {
         waitForNextStep(scanner, "Étape 4 : Appuyez sur Entrée pour continuer...");
 
         // Étape 5 : Dilatation avec overlapping et cross-corrélation
-//        outputWav =
-        vocodeSimpleOverCross(newPitchWav, 1.0 / freqScale);
-//        StdAudio.save(outPutFile + "SimpleOverCross.wav", outputWav);
+        CrossSearch search = new CrossSearch();
+        String crossKey = Batch.crossKey(resampleKey, 1.0 / freqScale, search.getDecimation(),
+                search.getRefineRadius());
+        boolean[] searched = { false }; // stays false when the wav comes from the cache
+        outputWav = StageCache.cached(cache, crossKey, () -> {
+            searched[0] = true;
+            return vocodeSimpleOverCross(newPitchWav, 1.0 / freqScale, search);
+        });
+        StdAudio.save(outPutFile + "SimpleOverCross.wav", outputWav);
         System.out.println("Waveform dilatée avec overlapping et cross-corrélation.");
-//        joue(outputWav);
+        System.out.println("Recherche : " + (searched[0] ? search : "résultat du cache, pas de recherche"));
+        joue(outputWav);
 
         waitForNextStep(scanner, "Étape 5 : Appuyez sur Entrée pour continuer...");
 
+        // Étape 5 bis : Dilatation par vocodeur de phase, pour comparer
+        double[] phaseWav = StageCache.cached(cache, StageCache.key(resampleKey, "phase", 1.0 / freqScale),
+                () -> vocodePhase(newPitchWav, 1.0 / freqScale));
+        StdAudio.save(outPutFile + "Phase.wav", phaseWav);
+        System.out.println("Waveform dilatée avec le vocodeur de phase.");
+        joue(phaseWav);
+
+        waitForNextStep(scanner, "Étape 5 bis : Appuyez sur Entrée pour continuer...");
+
         // Étape 6 : Ajout d'un écho
-        outputWav = echo(outputWav, 100, 0.7);
+        double[] crossWav = outputWav;
+        outputWav = StageCache.cached(cache, StageCache.key(crossKey, "echo", 100, 0.7),
+                () -> echo(crossWav, 100, 0.7));
         StdAudio.save(outPutFile + "SimpleOverCrossEcho.wav", outputWav);
         System.out.println("Écho ajouté à la waveform.");
         joue(outputWav);
 
+        if (cache != null) {
+            System.out.println("Cache : " + cache);
+        }
         System.out.println("Affichage terminé.");
     }
 
@@ -70,20 +126,29 @@ public class Pauvocoder {
         int displayWindow = 5000; // Number of sample to show
         int sampleRate = StdAudio.SAMPLE_RATE;
 
-        // Display and playing in real time
-        for (int i = 0; i < input.length; i++) {
-            // Play the sample
-            StdAudio.play(input[i]);
+        // The waveform is drawn by its own thread, the audio only publishes the position of the played sample
+        SpectrogramView.get().reset();
+        WaveformRenderer renderer = new WaveformRenderer(input, displayWindow);
+        renderer.start();
+
+        // Playing in real time, the samples are sent by blocks up to the next displayed sample
+        int played = 0;
+        for (int i = 0; i < input.length; i += displayWindow) {
+            StdAudio.play(input, played, i + 1 - played);
+            played = i + 1;
+            renderer.publish(i);
+        }
 
-            // Show the played sample
-            if (i % displayWindow == 0 || i == input.length - 1) {
-                int startIndex = Math.max(0, i - displayWindow / 2);
-                int endIndex = Math.min(input.length, i + displayWindow / 2);
-                double[] wavToDisplay = new double[endIndex - startIndex];
-                System.arraycopy(input, startIndex, wavToDisplay, 0, wavToDisplay.length);
+        // Play the rest and show the last sample
+        if (played < input.length) {
+            StdAudio.play(input, played, input.length - played);
+            renderer.publish(input.length - 1);
+        }
 
-                displayWaveform(wavToDisplay);
-            }
+        renderer.stop();
+        if (renderer.getLateFrames() > 0 || renderer.getDroppedFrames() > 0) {
+            System.out.println("Affichage : " + renderer.getDrawnFrames() + " images, "
+                    + renderer.getLateFrames() + " en retard, " + renderer.getDroppedFrames() + " perdues.");
         }
     }
 
@@ -100,6 +165,8 @@ public class Pauvocoder {
 
     /**
      * Resample the input to make it longer or shorter depending on freqScale ( shorter for lower voice and longer for higher voice )
+     *
+     * @apiNote Uses a polyphase windowed sinc filter, see PolyphaseResampler
      * @param inputWav the .wav input
      * @param freqScale > 0, don't make it too big it is advisable to not got more than 1.9
      * @return resampled wav
@@ -109,31 +176,17 @@ public class Pauvocoder {
             throw new IllegalArgumentException("freqScale must be greater than 0");
         }
 
+        StageMetrics metrics = StageMetrics.start("resample");
+        double[] output;
         if (freqScale == 1) {
             // No resampling needed, return the input directly
-            return inputWav.clone();
-        }
-
-        // New length and the return array
-        int newLength = (int) (inputWav.length / freqScale);
-        double[] resampled = new double[newLength];
-
-        for (int i = 0; i < newLength; i++) {
-            // We separate the integer and fraction of i * freqScale
-            double originalIndex = i * freqScale;
-            int index = (int) originalIndex;
-            double fraction = originalIndex - index;
-
-            // Then we apply the formula
-            if (index + 1 < inputWav.length) {
-                // Get the middle point between f(index) and f(index+1) and multiply the fraction by it
-                resampled[i] = inputWav[index] + fraction * (inputWav[index + 1] - inputWav[index]);
-            } else {
-                resampled[i] = inputWav[index]; // Last sample doesn't have a next index
-            }
+            output = inputWav.clone();
+        } else {
+            // Band limited interpolation (windowed sinc), linear interpolation aliases a lot when freqScale > 1
+            output = new PolyphaseResampler(freqScale).resample(inputWav);
         }
-
-        return resampled;
+        metrics.end(inputWav.length);
+        return output;
     }
 
 
@@ -145,10 +198,23 @@ public class Pauvocoder {
      * @return dilated wav
      */
     public static double[] vocodeSimple(double[] input, double freqScale) {
+        return vocodeSimple(input, freqScale, null);
+    }
+
+    /**
+     * Simple dilatation, the sequences are shared between the threads of pool
+     *
+     * @param input the outpout of the resample function
+     * @param freqScale dialatation factor, the same as the resample
+     * @param pool pool used for the sequences, null to stay in the current thread
+     * @return dilated wav, the same as without pool
+     */
+    public static double[] vocodeSimple(double[] input, double freqScale, ForkJoinPool pool) {
         if (freqScale <= 0) {
             throw new IllegalArgumentException("freqScale must be greater than 0");
         }
 
+        StageMetrics metrics = StageMetrics.start("simple");
         int inputLength = input.length;
 
         // Dynamically calculate seqLength to preserve original signal duration after resampling
@@ -160,18 +226,10 @@ public class Pauvocoder {
         int outputLength = numSequences * seqLength;
         double[] output = new double[outputLength];
 
-        // Then proceed to cut the input with seq
-        for (int seq = 0; seq < numSequences; seq++) {
-            int inputStart = seq * hopSize;
-            int outputStart = seq * seqLength;
-
-            for (int i = 0; i < seqLength; i++) {
-                if (inputStart + i < inputLength && outputStart + i < outputLength) {
-                    output[outputStart + i] = input[inputStart + i];
-                }
-            }
-        }
+        // Then proceed to cut the input with seq, the sequences don't overlap in the output
+        FrameTask.run(pool, input, output, null, seqLength, hopSize, seqLength, 0, numSequences);
 
+        metrics.end(inputLength);
         return output;
     }
 
@@ -185,10 +243,24 @@ public class Pauvocoder {
      * @return dilated wav
      */
     public static double[] vocodeSimpleOver(double[] input, double freqScale) {
+        return vocodeSimpleOver(input, freqScale, null);
+    }
+
+    /**
+     * Simple dilatation, with overlapping, the sequences are shared between the threads of pool
+     *
+     * @apiNote The overlapping parts between two threads are merged at the end, see FrameTask
+     * @param input the outpout of the function resample
+     * @param freqScale dilatation factor, same as the resample
+     * @param pool pool used for the sequences, null to stay in the current thread
+     * @return dilated wav, the same as without pool ( up to one ulp on the seams with the SIMD kernels )
+     */
+    public static double[] vocodeSimpleOver(double[] input, double freqScale, ForkJoinPool pool) {
         if (freqScale <= 0) {
             throw new IllegalArgumentException("freqScale must be greater than 0");
         }
 
+        StageMetrics metrics = StageMetrics.start("over");
         int inputLength = input.length;
 
         // Dynamically calculate seqLength to preserve original signal duration after resampling
@@ -201,7 +273,25 @@ public class Pauvocoder {
         int outputLength = numSequences * seqLength;
         double[] output = new double[outputLength];
 
-        // Window function to create smooth transitions (Hann window), found the formula on it's wikipedia page
+        // Window function to create smooth transitions (Hann window)
+        double[] window = overlapWindow(seqLength, oLap);
+
+        // Then proceed to cut the input with seq with the window
+        FrameTask.run(pool, input, output, window, seqLength, hopSize, seqLength - oLap, oLap, numSequences);
+
+        metrics.end(inputLength);
+        return output;
+    }
+
+    /**
+     * Window used by the overlapping dilatations, the edges (oLap samples) are half of a hann window and the middle is flat
+     *
+     * @param seqLength length of a sequence
+     * @param oLap length of the overlap
+     * @return the window
+     */
+    static double[] overlapWindow(int seqLength, int oLap) {
+        // Found the formula on the hann window wikipedia page
         double[] window = new double[seqLength];
         for (int i = 0; i < seqLength; i++) {
             if (i < oLap) {
@@ -212,33 +302,95 @@ public class Pauvocoder {
                 window[i] = 1.0;
             }
         }
+        return window;
+    }
 
-        // Then proceed to cut the input with seq with the window
+    /**
+     * Simple dilatation, with overlapping and maximum cross correlation search (WSOLA)
+     *
+     * @apiNote Same cut as vocodeSimpleOver, but each sequence is moved by up to searchRange samples around its
+     * position so that its beginning looks like the natural continuation of the previous sequence. The best offset
+     * is the maximum of the normalized cross correlation, computed with a FFT so a frame costs O(n log n)
+     * @param input the outpout of the function resample
+     * @param freqScale dilatation factor, same as the resample
+     * @return dilated wav
+     */
+    public static double[] vocodeSimpleOverCross(double[] input, double freqScale) {
+        return vocodeSimpleOverCross(input, freqScale, new CrossSearch());
+    }
+
+    /**
+     * Simple dilatation, with overlapping and maximum cross correlation search (WSOLA)
+     *
+     * @apiNote Same as vocodeSimpleOverCross(input, freqScale) but the offset search is given, a CrossSearch with a
+     * decimation greater than 1 trades a bit of quality for a lot less correlations
+     * @param input the outpout of the function resample
+     * @param freqScale dilatation factor, same as the resample
+     * @param search the offset search, its counters are updated
+     * @return dilated wav
+     */
+    public static double[] vocodeSimpleOverCross(double[] input, double freqScale, CrossSearch search) {
+        if (freqScale <= 0) {
+            throw new IllegalArgumentException("freqScale must be greater than 0");
+        }
+
+        StageMetrics metrics = StageMetrics.start("cross");
+        int inputLength = input.length;
+
+        // Same sequences as vocodeSimpleOver
+        int seqLength = (int) (1024 * freqScale); // Base length (1024, 2^10) adjusted by freqScale
+        int hopSize = (int) (seqLength * freqScale);
+        int oLap = seqLength / 4; // Overlap is set to 25% of the sequence length
+        int searchRange = oLap; // Maximum move of a sequence, on each side of its position
+
+        // Estimate output length
+        int numSequences = (inputLength - seqLength) / hopSize + 1;
+        int outputLength = numSequences * seqLength;
+        double[] output = new double[outputLength];
+
+        double[] window = overlapWindow(seqLength, oLap);
+
+        int previousStart = 0;
         for (int seq = 0; seq < numSequences; seq++) {
             int inputStart = seq * hopSize;
             int outputStart = seq * (seqLength - oLap);
 
-            for (int i = 0; i < seqLength; i++) {
-                if (inputStart + i < inputLength && outputStart + i < outputLength) {
-                    output[outputStart + i] += input[inputStart + i] * window[i];
-                }
+            // What would follow the previous sequence in the input, the overlap should look like it
+            int templateStart = previousStart + seqLength - oLap;
+            if (seq > 0 && oLap > 0 && templateStart + oLap <= inputLength) {
+                inputStart = search.bestOffset(input, templateStart, oLap, inputStart, searchRange, seqLength);
+            }
+
+            // The bounds are checked once for the whole sequence, not per sample
+            int length = Math.min(seqLength, Math.min(inputLength - inputStart, outputLength - outputStart));
+            if (length > 0) {
+                Kernels.multiplyAccumulate(output, outputStart, input, inputStart, window, 0, length);
             }
+            previousStart = inputStart;
         }
 
+        metrics.end(inputLength);
         return output;
     }
 
     /**
-     * Simple dilatation, with overlapping and maximum cross correlation search
+     * Dilatation in the frequency domain ( phase vocoder ), an other choice than vocodeSimpleOver
      *
-     * @apiNote We didn't understood how to implement this part
-     * @param input
-     * @param freqScale
-     * @return
+     * @apiNote The frames are not only moved and faded, the phase of each frequency is advanced so that the frames
+     * follow each other without the "echo" of the overlapping, see PhaseVocoder
+     * @param input the outpout of the function resample
+     * @param freqScale dilatation factor, same as the resample
+     * @return dilated wav, input.length / freqScale long
      */
-    public static double[] vocodeSimpleOverCross(double[] input, double freqScale) {
-        System.out.println("Could not implement this function :(");
-        return input.clone();
+    public static double[] vocodePhase(double[] input, double freqScale) {
+        if (freqScale <= 0) {
+            throw new IllegalArgumentException("freqScale must be greater than 0");
+        }
+
+        StageMetrics metrics = StageMetrics.start("phase");
+        double[] output = new PhaseVocoder(freqScale).stretch(input);
+        metrics.end(input.length);
+        return output;
     }
 
     /**
@@ -257,29 +409,90 @@ public class Pauvocoder {
             throw new IllegalArgumentException("Attenuation must be between 0 and 1.");
         }
 
+        StageMetrics metrics = StageMetrics.start("echo");
         int sampleRate = StdAudio.SAMPLE_RATE; // Sampling rate
         int delaySamples = (int) (delayMs / 1000.0 * sampleRate); // Delay in number of samples
 
-        // Output array with the same size as the input
+        // Output array with the same size as the input, starting with the original signal
+        double[] output = input.clone();
+
+        // Add the echo where applicable
+        if (delaySamples < input.length) {
+            Kernels.addScaled(output, delaySamples, input, 0, attn, input.length - delaySamples);
+        }
+
+        // Limit values to the range [-1, 1]
+        Kernels.clip(output, 0, output.length, -1.0, 1.0);
+
+        metrics.end(input.length);
+        return output;
+    }
+
+    /**
+     * Add several echoes to the wav, each one can be sent back into the others
+     *
+     * @apiNote See DelayNetwork, with one tap and no feedback this is echo up to rounding
+     * @param input the outpout of a dilatation function
+     * @param delaysMs delay of each echo in msec
+     * @param gains gain of each echo
+     * @param feedback feedback[i][j] is the part of the echo j sent back in the echo i, null for no feedback
+     * @return wav with echoes, same length as the input
+     */
+    public static double[] multiEcho(double[] input, double[] delaysMs, double[] gains, double[][] feedback) {
+        DelayNetwork network = new DelayNetwork(delaysMs, gains, feedback);
+        StageMetrics metrics = StageMetrics.start("multiEcho");
         double[] output = new double[input.length];
 
-        for (int i = 0; i < input.length; i++) {
-            // Add the original signal
-            output[i] = input[i];
+        // The blocks are written one after the other in output
+        int[] written = { 0 };
+        SampleSink sink = (samples, offset, length) -> {
+            System.arraycopy(samples, offset, output, written[0], length);
+            written[0] += length;
+        };
+        network.process(input, sink);
+        network.flush(sink);
 
-            // Add the echo if applicable
-            if (i >= delaySamples) {
-                output[i] += input[i - delaySamples] * attn;
-            }
+        metrics.end(input.length);
+        return output;
+    }
 
-            // Limit values to the range [-1, 1]
-            if (output[i] > 1.0) {
-                output[i] = 1.0;
-            } else if (output[i] < -1.0) {
-                output[i] = -1.0;
-            }
-        }
+    /**
+     * Add the reverb of a room to the wav, echo with a whole impulse response instead of one delayed copy
+     *
+     * @apiNote The impulse response is read with StdAudio.read, see reverb(input, impulse, mix)
+     * @param input the outpout of a dilatation function
+     * @param impulseFile .wav of the impulse response of the room
+     * @param mix part of the reverb in the output, between 0 ( dry ) and 1 ( only the reverb )
+     * @return wav with reverb, longer than the input by the length of the impulse minus one
+     */
+    public static double[] reverb(double[] input, String impulseFile, double mix) {
+        return reverb(input, StdAudio.read(impulseFile), mix);
+    }
 
+    /**
+     * Add the reverb of a room to the wav
+     *
+     * @apiNote The convolution is done by blocks with FFTs, see ConvolutionReverb, a reverb of several seconds is fine
+     * @param input the outpout of a dilatation function
+     * @param impulse impulse response of the room
+     * @param mix part of the reverb in the output, between 0 ( dry ) and 1 ( only the reverb )
+     * @return wav with reverb, longer than the input by the length of the impulse minus one
+     */
+    public static double[] reverb(double[] input, double[] impulse, double mix) {
+        ConvolutionReverb reverb = new ConvolutionReverb(impulse, mix);
+        StageMetrics metrics = StageMetrics.start("reverb");
+        double[] output = new double[input.length == 0 ? 0 : input.length + impulse.length - 1];
+
+        // The blocks are written one after the other in output
+        int[] written = { 0 };
+        SampleSink sink = (samples, offset, length) -> {
+            System.arraycopy(samples, offset, output, written[0], length);
+            written[0] += length;
+        };
+        reverb.process(input, sink);
+        reverb.flush(sink);
+
+        metrics.end(input.length);
         return output;
     }
 
@@ -287,28 +500,22 @@ public class Pauvocoder {
     /**
      * Display the waveform
      *
+     * @apiNote The canvas is created once, each call only redraws what changed since the previous one ( WaveformView )
      * @param wav outpout of any function or just the original wav file
      */
     public static void displayWaveform(double[] wav) {
-        int n = wav.length;
-        StdDraw.enableDoubleBuffering();
-        // Configurer StdDraw
-        StdDraw.setCanvasSize(800, 400);
-        StdDraw.setXscale(0, n);
-        StdDraw.setYscale(-1.1, 1.1);
-        StdDraw.clear(StdDraw.WHITE);
-        StdDraw.setPenColor(StdDraw.BLUE);
-
-        // Tracer le signal audio
-        for (int i = 0; i < n - 1; i++) {
-            StdDraw.line(i, wav[i], i + 1, wav[i + 1]);
-        }
+        WaveformView.get().update(wav, 0, wav.length);
+    }
 
-        // Ajouter des axes
-        StdDraw.setPenColor(StdDraw.BLACK);
-        StdDraw.line(0, 0, n, 0); // Axe X
-        StdDraw.line(0, -1, 0, 1); // Axe Y
-        StdDraw.show();
+    /**
+     * Display a part of a long wav, using its summary so the cost only depends on the width of the canvas
+     *
+     * @param pyramid summary of the wav, see WaveformPyramid
+     * @param from first sample shown
+     * @param to end of the part shown (excluded)
+     */
+    public static void displayWaveform(WaveformPyramid pyramid, int from, int to) {
+        WaveformView.get().update(pyramid, from, to);
     }
 
 
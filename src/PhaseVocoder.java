@@ -0,0 +1,163 @@
+/**
+ * Dilatation in the frequency domain ( phase vocoder ), used by Pauvocoder.vocodePhase.
+ *
+ * @apiNote The input is cut in Hann windowed frames every analysisHop samples, and they are added back every
+ * SYNTHESIS_HOP samples. The magnitude of each bin is kept, its phase is advanced by what its true frequency would
+ * turn during SYNTHESIS_HOP samples. Only the peaks of the spectrum get their own phase advance, the bins around a peak
+ * are turned by the same angle as the peak ( identity phase locking ), so the partials and the attacks stay coherent
+ * instead of sounding "phasy". The FFT plan and the frame buffers are made once by the constructor, a frame
+ * allocates nothing.
+ */
+public final class PhaseVocoder {
+
+    public static final int FRAME_SIZE = 2048;
+    public static final int SYNTHESIS_HOP = FRAME_SIZE / 4;
+    private static final int BINS = FRAME_SIZE / 2 + 1;
+    // Sum of the squared Hann windows spaced by FRAME_SIZE / 4
+    private static final double OVERLAP_GAIN = 1.5;
+
+    private final double freqScale;
+    private final double analysisHop;
+    private final FFT fft = FFT.plan(FRAME_SIZE);
+    private final double[] window = new double[FRAME_SIZE];
+    private final double[] frame = new double[FRAME_SIZE];
+
+    private final double[] re = new double[BINS];          // spectrum of the frame
+    private final double[] im = new double[BINS];
+    private final double[] power = new double[BINS];
+    private final double[] previousRe = new double[BINS];  // spectrum of the previous frame
+    private final double[] previousIm = new double[BINS];
+    private final double[] outRe = new double[BINS];       // spectrum written in the output
+    private final double[] outIm = new double[BINS];
+    private final double[] previousOutRe = new double[BINS];
+    private final double[] previousOutIm = new double[BINS];
+    private final int[] peaks = new int[BINS];
+
+    /**
+     * @param freqScale dilatation factor, same as the resample : the output is input.length / freqScale long
+     */
+    public PhaseVocoder(double freqScale) {
+        if (freqScale <= 0) {
+            throw new IllegalArgumentException("freqScale must be greater than 0");
+        }
+        this.freqScale = freqScale;
+        this.analysisHop = SYNTHESIS_HOP * freqScale;
+
+        // Periodic Hann window, used for the analysis and the synthesis
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            window[i] = 0.5 * (1 - Math.cos(2 * Math.PI * i / FRAME_SIZE));
+        }
+    }
+
+    public double getFreqScale() {
+        return freqScale;
+    }
+
+    /**
+     * Dilate the whole input
+     *
+     * @param input the .wav input
+     * @return dilated wav, input.length / freqScale long
+     */
+    public double[] stretch(double[] input) {
+        int outputLength = (int) (input.length / freqScale);
+        double[] output = new double[outputLength];
+
+        // Frames are centered on t * hop, from the last one that ends before 0 to the first one that starts after the
+        // end, so that every output sample gets the same sum of windows
+        int first = -(FRAME_SIZE / 2) / SYNTHESIS_HOP + 1;
+        int last = (outputLength + FRAME_SIZE / 2) / SYNTHESIS_HOP;
+        long previousStart = 0;
+        for (int t = first; t <= last; t++) {
+            long inputStart = Math.round(t * analysisHop) - FRAME_SIZE / 2;
+            analyse(input, inputStart);
+            if (t == first) {
+                System.arraycopy(re, 0, outRe, 0, BINS);
+                System.arraycopy(im, 0, outIm, 0, BINS);
+            } else {
+                advancePhases(inputStart - previousStart);
+            }
+
+            System.arraycopy(re, 0, previousRe, 0, BINS);
+            System.arraycopy(im, 0, previousIm, 0, BINS);
+            System.arraycopy(outRe, 0, previousOutRe, 0, BINS);
+            System.arraycopy(outIm, 0, previousOutIm, 0, BINS);
+            previousStart = inputStart;
+
+            // The inverse uses outRe and outIm as work space, they are already saved
+            fft.inverse(outRe, outIm, frame, 0);
+            int outputStart = t * SYNTHESIS_HOP - FRAME_SIZE / 2;
+            int from = Math.max(0, -outputStart);
+            int to = Math.min(FRAME_SIZE, outputLength - outputStart);
+            for (int i = from; i < to; i++) {
+                output[outputStart + i] += frame[i] * window[i] / OVERLAP_GAIN;
+            }
+        }
+        return output;
+    }
+
+    // Spectrum of the windowed input[start, start + FRAME_SIZE), the samples outside of the input are 0
+    private void analyse(double[] input, long start) {
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            long index = start + i;
+            frame[i] = index >= 0 && index < input.length ? input[(int) index] * window[i] : 0;
+        }
+        fft.forward(frame, 0, re, im);
+    }
+
+    // Spectrum of the output frame from the analysed one, hop is the distance to the previous analysed frame
+    private void advancePhases(long hop) {
+        for (int k = 0; k < BINS; k++) {
+            power[k] = re[k] * re[k] + im[k] * im[k];
+        }
+
+        // A peak is louder than the two bins on each side
+        int count = 0;
+        for (int k = 0; k < BINS; k++) {
+            if (power[k] > 0 && isPeak(k)) {
+                peaks[count++] = k;
+            }
+        }
+        if (count == 0) {
+            // Silence, nothing to keep coherent
+            System.arraycopy(re, 0, outRe, 0, BINS);
+            System.arraycopy(im, 0, outIm, 0, BINS);
+            return;
+        }
+
+        for (int p = 0; p < count; p++) {
+            int peak = peaks[p];
+
+            // True frequency of the peak from the phase turned since the previous frame
+            double omega = 2 * Math.PI * peak / FRAME_SIZE;
+            double phase = Math.atan2(im[peak], re[peak]);
+            double previousPhase = Math.atan2(previousIm[peak], previousRe[peak]);
+            double deviation = phase - previousPhase - omega * hop;
+            deviation -= 2 * Math.PI * Math.rint(deviation / (2 * Math.PI));
+            double frequency = omega + (hop > 0 ? deviation / hop : 0);
+            double outPhase = Math.atan2(previousOutIm[peak], previousOutRe[peak]) + frequency * SYNTHESIS_HOP;
+
+            // The bins closer to this peak than to the others are turned by the same angle
+            double cos = Math.cos(outPhase - phase);
+            double sin = Math.sin(outPhase - phase);
+            int from = p == 0 ? 0 : (peaks[p - 1] + peak) / 2 + 1;
+            int to = p == count - 1 ? BINS : (peak + peaks[p + 1]) / 2 + 1;
+            for (int k = from; k < to; k++) {
+                outRe[k] = re[k] * cos - im[k] * sin;
+                outIm[k] = re[k] * sin + im[k] * cos;
+            }
+        }
+    }
+
+    private boolean isPeak(int k) {
+        for (int d = 1; d <= 2; d++) {
+            if (k - d >= 0 && power[k - d] >= power[k]) {
+                return false;
+            }
+            if (k + d < BINS && power[k + d] > power[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Band limited resampler (windowed sinc), used by Pauvocoder.resample.
+ *
+ * @apiNote The filter is cut in PHASES fractional positions that are computed once in a table, so resampling only
+ * does multiplications and additions, no sin or cos per sample. Between two phases the coefficients are linearly
+ * interpolated. When freqScale > 1 the cutoff is lowered to the new nyquist frequency to avoid aliasing.
+ */
+public final class PolyphaseResampler {
+
+    // Number of fractional positions in the table
+    private static final int PHASES = 256;
+    // Zero crossings of the sinc on each side of the center, more means a sharper filter
+    private static final int ZERO_CROSSINGS = 16;
+
+    private final double freqScale;
+    private final int halfTaps;    // number of input samples used on each side of the position
+    private final double[][] table; // table[phase][tap], PHASES + 1 rows so that the last phase can be interpolated
+
+    /**
+     * Compute the coefficient table
+     *
+     * @param freqScale > 0, same as the resample
+     */
+    public PolyphaseResampler(double freqScale) {
+        if (freqScale <= 0) {
+            throw new IllegalArgumentException("freqScale must be greater than 0");
+        }
+        this.freqScale = freqScale;
+
+        // Cutoff relative to the input nyquist frequency
+        double cutoff = Math.min(1.0, 1.0 / freqScale);
+        halfTaps = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+        int taps = 2 * halfTaps;
+
+        table = new double[PHASES + 1][taps];
+        for (int phase = 0; phase <= PHASES; phase++) {
+            double fraction = (double) phase / PHASES;
+            double sum = 0;
+            for (int tap = 0; tap < taps; tap++) {
+                // Distance between the input sample and the position we want
+                double t = tap - halfTaps + 1 - fraction;
+                double value = cutoff * sinc(cutoff * t) * blackman(t / halfTaps);
+                table[phase][tap] = value;
+                sum += value;
+            }
+            // Keep a gain of 1 for a constant signal
+            for (int tap = 0; tap < taps; tap++) {
+                table[phase][tap] /= sum;
+            }
+        }
+    }
+
+    public double getFreqScale() {
+        return freqScale;
+    }
+
+    /**
+     * @return number of input samples used on each side of an output position
+     */
+    public int getHalfTaps() {
+        return halfTaps;
+    }
+
+    /**
+     * Resample the whole input, same length as the linear resample : input.length / freqScale
+     *
+     * @param inputWav the .wav input
+     * @return resampled wav
+     */
+    public double[] resample(double[] inputWav) {
+        int newLength = (int) (inputWav.length / freqScale);
+        double[] resampled = new double[newLength];
+        for (int i = 0; i < newLength; i++) {
+            resampled[i] = valueAt(inputWav, 0, inputWav.length, i * freqScale);
+        }
+        return resampled;
+    }
+
+    /**
+     * Filtered value of the signal at a fractional position, samples outside [0, length) are 0
+     *
+     * @param signal the input
+     * @param offset index of the sample 0 in signal
+     * @param length number of valid samples after offset
+     * @param position fractional position, relative to offset
+     * @return the value
+     */
+    public double valueAt(double[] signal, int offset, int length, double position) {
+        int index = (int) position;
+        double scaledPhase = (position - index) * PHASES;
+        int phase = (int) scaledPhase;
+        double mix = scaledPhase - phase;
+        double[] row = table[phase];
+        double[] nextRow = table[phase + 1];
+
+        int first = index - halfTaps + 1;
+        double a = 0;
+        double b = 0;
+        if (first >= 0 && first + 2 * halfTaps <= length) {
+            // Fast path, no bound check
+            int start = offset + first;
+            for (int tap = 0; tap < row.length; tap++) {
+                double s = signal[start + tap];
+                a += s * row[tap];
+                b += s * nextRow[tap];
+            }
+        } else {
+            for (int tap = 0; tap < row.length; tap++) {
+                int j = first + tap;
+                if (j >= 0 && j < length) {
+                    double s = signal[offset + j];
+                    a += s * row[tap];
+                    b += s * nextRow[tap];
+                }
+            }
+        }
+        return a + mix * (b - a);
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) {
+            return 1.0;
+        }
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    // Blackman window for x in [-1, 1], 0 outside
+    private static double blackman(double x) {
+        if (x <= -1 || x >= 1) {
+            return 0;
+        }
+        double angle = Math.PI * (x + 1);
+        return 0.42 - 0.5 * Math.cos(angle) + 0.08 * Math.cos(2 * angle);
+    }
+}
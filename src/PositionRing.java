@@ -0,0 +1,58 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring of playback positions between one producer ( the audio thread ) and one consumer ( the rendering
+ * thread ). Neither side ever waits : offer fails when the ring is full and poll fails when it is empty.
+ *
+ * @apiNote Only one thread may call offer and only one thread may call poll
+ */
+public final class PositionRing {
+
+    private final long[] positions;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next index to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next index to write, written by the producer
+
+    /**
+     * @param capacity maximum number of pending positions, rounded up to a power of two
+     */
+    public PositionRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        int size = PowerOfTwo.next(capacity);
+        positions = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Producer side
+     *
+     * @param position the position to publish
+     * @return false if the ring is full, the position is then lost
+     */
+    public boolean offer(long position) {
+        long t = tail.get();
+        if (t - head.get() == positions.length) {
+            return false;
+        }
+        positions[(int) t & mask] = position;
+        tail.lazySet(t + 1); // publishes the position
+        return true;
+    }
+
+    /**
+     * Consumer side
+     *
+     * @return the oldest position, or -1 if the ring is empty
+     */
+    public long poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return -1;
+        }
+        long position = positions[(int) h & mask];
+        head.lazySet(h + 1); // frees the slot
+        return position;
+    }
+}
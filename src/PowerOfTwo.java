@@ -0,0 +1,31 @@
+/**
+ * Sizes rounded to a power of two, for the FFT and for the rings that find their positions with a mask
+ */
+public final class PowerOfTwo {
+
+    private static final int MAX = 1 << 30;
+
+    private PowerOfTwo() {
+    }
+
+    /**
+     * Smallest power of two greater or equal to n
+     *
+     * @param n a number, at most 2^30
+     * @return the power of two, 1 when n is below 1
+     */
+    public static int next(int n) {
+        if (n > MAX) {
+            throw new IllegalArgumentException("no power of two above " + n + " fits in an int");
+        }
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * @param n a number
+     * @return true if n is a power of two
+     */
+    public static boolean is(int n) {
+        return n > 0 && (n & (n - 1)) == 0;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Receives the samples produced by a BlockProcessor ( or read from a file ).
+ *
+ * @apiNote The array may be reused by the caller once write returns, copy what you want to keep
+ */
+@FunctionalInterface
+public interface SampleSink {
+
+    /**
+     * @param samples the samples
+     * @param offset index of the first sample in samples
+     * @param length number of samples
+     */
+    void write(double[] samples, int offset, int length);
+}
@@ -0,0 +1,66 @@
+/******************************************************************************
+ *  Compilation:  javac --add-modules jdk.incubator.vector SimdKernels.java
+ *  Execution:    loaded by Kernels when the JVM runs with
+ *                --add-modules jdk.incubator.vector
+ *
+ ******************************************************************************/
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API version of the Kernels loops, the end of the arrays that doesn't fill a whole vector is done in scalar.
+ */
+public final class SimdKernels implements Kernels.Impl {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void multiplyAccumulate(double[] dst, int dstOff, double[] src, int srcOff, double[] window, int winOff,
+                                   int length) {
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector s = DoubleVector.fromArray(SPECIES, src, srcOff + i);
+            DoubleVector w = DoubleVector.fromArray(SPECIES, window, winOff + i);
+            DoubleVector d = DoubleVector.fromArray(SPECIES, dst, dstOff + i);
+            s.fma(w, d).intoArray(dst, dstOff + i);
+        }
+        for (; i < length; i++) {
+            dst[dstOff + i] += src[srcOff + i] * window[winOff + i];
+        }
+    }
+
+    @Override
+    public void addScaled(double[] dst, int dstOff, double[] src, int srcOff, double gain, int length) {
+        DoubleVector g = DoubleVector.broadcast(SPECIES, gain);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector s = DoubleVector.fromArray(SPECIES, src, srcOff + i);
+            DoubleVector d = DoubleVector.fromArray(SPECIES, dst, dstOff + i);
+            s.fma(g, d).intoArray(dst, dstOff + i);
+        }
+        for (; i < length; i++) {
+            dst[dstOff + i] += src[srcOff + i] * gain;
+        }
+    }
+
+    @Override
+    public void clip(double[] dst, int off, int length, double min, double max) {
+        DoubleVector low = DoubleVector.broadcast(SPECIES, min);
+        DoubleVector high = DoubleVector.broadcast(SPECIES, max);
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, dst, off + i).max(low).min(high).intoArray(dst, off + i);
+        }
+        for (; i < length; i++) {
+            if (dst[off + i] > max) {
+                dst[off + i] = max;
+            } else if (dst[off + i] < min) {
+                dst[off + i] = min;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+
+/**
+ * Scrolling spectrogram of the played wav, one column per FFT frame ( used by Pauvocoder.joue through the
+ * WaveformRenderer ).
+ *
+ * @apiNote The image is created once and used as a circular buffer of columns : a new column replaces the oldest one
+ * and the window draws the image in two parts, so nothing is shifted. The Hann window, the FFT plan and buffers and the
+ * colours are made once, a frame only costs its FFT. The window is made on the Swing thread, which draws the image
+ * with the lock of the view held, so it never sees a column half written or the split of another frame. Without
+ * display ( StdDraw.isHeadless ) there is no window, the image can still be saved.
+ */
+public final class SpectrogramView {
+
+    public static final int FFT_SIZE = 1024;
+    // Distance between two frames, about 86 columns per second at 44100 Hz
+    public static final int HOP = FFT_SIZE / 2;
+    public static final int WIDTH = 800;
+    // One row per bin, from 0 to about 11 kHz
+    public static final int HEIGHT = FFT_SIZE / 4;
+    // Magnitudes from MIN_DB to 0 dB ( full scale sine ) are spread over the colours
+    private static final double MIN_DB = -90;
+    private static final int COLOURS = 256;
+
+    private static SpectrogramView instance = null;
+
+    private final FFT fft = FFT.plan(FFT_SIZE);
+    private final double[] window = new double[FFT_SIZE];
+    private final double[] frame = new double[FFT_SIZE];
+    private final double[] re = new double[FFT_SIZE / 2 + 1];
+    private final double[] im = new double[FFT_SIZE / 2 + 1];
+    private final int[] colours = new int[COLOURS];
+    private final double dbScale;   // from 20*log10 of the magnitude to a colour
+
+    private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    private volatile JComponent canvas; // set on the Swing thread, null until then or without display
+    private int column = 0;         // next column written, the oldest one shown, guarded by this
+    private long nextFrame = 0;     // next frame of the wav
+
+    private SpectrogramView() {
+        // Hann window, the magnitudes are divided by its sum so that a full scale sine is at 0 dB
+        double sum = 0;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT_SIZE);
+            sum += window[i];
+        }
+        for (int i = 0; i < FFT_SIZE; i++) {
+            window[i] *= 2 / sum;
+        }
+        dbScale = (COLOURS - 1) / -MIN_DB;
+
+        // Black, blue, red, yellow, white
+        int[][] steps = { { 0, 0, 0 }, { 0, 0, 160 }, { 200, 0, 80 }, { 255, 200, 0 }, { 255, 255, 255 } };
+        for (int c = 0; c < COLOURS; c++) {
+            double t = (double) c / (COLOURS - 1) * (steps.length - 1);
+            int s = Math.min((int) t, steps.length - 2);
+            double f = t - s;
+            int r = (int) Math.round(steps[s][0] + f * (steps[s + 1][0] - steps[s][0]));
+            int g = (int) Math.round(steps[s][1] + f * (steps[s + 1][1] - steps[s][1]));
+            int b = (int) Math.round(steps[s][2] + f * (steps[s + 1][2] - steps[s][2]));
+            colours[c] = (r << 16) | (g << 8) | b;
+        }
+
+        if (!StdDraw.isHeadless()) {
+            SwingUtilities.invokeLater(this::createWindow);
+        }
+    }
+
+    // On the Swing thread
+    private void createWindow() {
+        JComponent component = new JComponent() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                // The oldest column is on the left, the audio thread waits until the image is drawn
+                synchronized (SpectrogramView.this) {
+                    int split = column;
+                    g.drawImage(image, 0, 0, WIDTH - split, HEIGHT, split, 0, WIDTH, HEIGHT, null);
+                    g.drawImage(image, WIDTH - split, 0, WIDTH, HEIGHT, 0, 0, split, HEIGHT, null);
+                }
+            }
+        };
+        component.setPreferredSize(new Dimension(WIDTH, HEIGHT));
+        JFrame frame = new JFrame("Spectrogramme");
+        frame.setResizable(false);
+        frame.setContentPane(component);
+        frame.pack();
+        frame.setVisible(true);
+        canvas = component;
+    }
+
+    /**
+     * @return the view, the window is created on the first call
+     */
+    public static synchronized SpectrogramView get() {
+        if (instance == null) {
+            instance = new SpectrogramView();
+        }
+        return instance;
+    }
+
+    /**
+     * Clear the image and start again from the beginning of a wav
+     */
+    public synchronized void reset() {
+        Arrays.fill(pixels, colours[0]);
+        column = 0;
+        nextFrame = 0;
+        repaint();
+    }
+
+    /**
+     * Add the columns of every frame of wav that ends before position
+     *
+     * @param wav the played wav
+     * @param position index of the sample being played
+     */
+    public synchronized void advanceTo(double[] wav, int position) {
+        int added = 0;
+        while (nextFrame * HOP + FFT_SIZE <= Math.min(position + 1L, wav.length)) {
+            addColumn(wav, (int) (nextFrame * HOP));
+            nextFrame++;
+            added++;
+        }
+        if (added > 0) {
+            repaint();
+        }
+    }
+
+    /**
+     * Write the spectrogram shown to an image ( .png, .jpg ... ), the oldest column on the left
+     *
+     * @param filename the image file
+     */
+    public synchronized void save(String filename) {
+        String suffix = filename.substring(filename.lastIndexOf('.') + 1);
+        BufferedImage ordered = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        ordered.getGraphics().drawImage(image, 0, 0, WIDTH - column, HEIGHT, column, 0, WIDTH, HEIGHT, null);
+        ordered.getGraphics().drawImage(image, WIDTH - column, 0, WIDTH, HEIGHT, 0, 0, column, HEIGHT, null);
+        try {
+            if (!ImageIO.write(ordered, suffix, new File(filename))) {
+                throw new IllegalArgumentException("The filetype '" + suffix + "' is not supported");
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not write file '" + filename + "'", e);
+        }
+    }
+
+    // FFT of wav[start, start + FFT_SIZE) written in the next column, low frequencies at the bottom
+    private void addColumn(double[] wav, int start) {
+        for (int i = 0; i < FFT_SIZE; i++) {
+            frame[i] = wav[start + i] * window[i];
+        }
+        fft.forward(frame, 0, re, im);
+
+        for (int bin = 0; bin < HEIGHT; bin++) {
+            double power = re[bin] * re[bin] + im[bin] * im[bin];
+            // 10*log10 of the power is 20*log10 of the magnitude
+            double db = power > 0 ? 10 * Math.log10(power) : MIN_DB;
+            int c = (int) ((db - MIN_DB) * dbScale);
+            pixels[(HEIGHT - 1 - bin) * WIDTH + column] = colours[Math.max(0, Math.min(COLOURS - 1, c))];
+        }
+        column = column + 1 == WIDTH ? 0 : column + 1;
+    }
+
+    private void repaint() {
+        JComponent shown = canvas;
+        if (shown != null) {
+            shown.repaint();
+        }
+    }
+}
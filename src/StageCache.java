@@ -0,0 +1,376 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Results of the stages kept on disk, so that a file processed again with the same scale does not redo the stages
+ * already done ( only the new ones ).
+ *
+ * @apiNote An entry is found by its key : the hash of what the stage received ( the input, or the key of the stage
+ * before ), of the name of the stage and of its parameters. Only the input wav is hashed, the other keys are made from
+ * the key before, so a hit costs the read of the file only. Each entry is a file key.bin with a small header and the
+ * samples as raw doubles, the result read is exactly the one computed. The directory is bounded : when it is too big
+ * the least recently used entries are deleted ( the date of a file is its last use, so the order is kept from one run
+ * to the next ). An entry that can not be read is a miss, the cache never makes a stage fail. After a change in the code
+ * of a stage the cache should be emptied, or VERSION changed.
+ */
+public final class StageCache {
+
+    private static final int MAGIC = 0x53544743; // "STGC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 32 + 4; // magic, version, key, samples
+    private static final String EXTENSION = ".bin";
+
+    /**
+     * Size of the directory when pauvocoder.cache.mb is not given
+     */
+    public static final long DEFAULT_MAX_BYTES = 512L << 20;
+
+    private final File dir;
+    private final long maxBytes;
+
+    // key -> size of its file, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * Open a cache directory, created if needed, the entries already there are kept
+     *
+     * @param dir the directory
+     * @param maxBytes size of the directory above which entries are deleted
+     */
+    public StageCache(String dir, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The size of the cache must be greater than 0.");
+        }
+        this.dir = new File(dir);
+        this.maxBytes = maxBytes;
+        if (!this.dir.isDirectory() && !this.dir.mkdirs()) {
+            throw new IllegalArgumentException("could not create cache directory '" + dir + "'");
+        }
+
+        // Temporary files left by a run that stopped while writing
+        for (File tmp : this.dir.listFiles((d, name) -> name.endsWith(".tmp"))) {
+            tmp.delete();
+        }
+        File[] files = this.dir.listFiles((d, name) -> name.matches("[0-9a-f]{64}\\" + EXTENSION));
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+                totalBytes += file.length();
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Cache of the directory given by -Dpauvocoder.cache, bounded by -Dpauvocoder.cache.mb
+     *
+     * @return the cache, null if the property is not set
+     */
+    public static StageCache fromProperties() {
+        String dir = System.getProperty("pauvocoder.cache");
+        return dir == null ? null : open(dir);
+    }
+
+    /**
+     * Cache of a directory, bounded by -Dpauvocoder.cache.mb ( 512 MB by default )
+     *
+     * @param dir the directory
+     * @return the cache
+     */
+    public static StageCache open(String dir) {
+        long mb = Long.getLong("pauvocoder.cache.mb", DEFAULT_MAX_BYTES >> 20);
+        return new StageCache(dir, mb << 20);
+    }
+
+    /**
+     * Key of an input, hash of its samples
+     *
+     * @param input the samples
+     * @return the key
+     */
+    public static String key(double[] input) {
+        MessageDigest digest = sha256();
+        ByteBuffer bytes = ByteBuffer.allocate(8 * 4096).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < input.length; i += 4096) {
+            int count = Math.min(4096, input.length - i);
+            bytes.clear();
+            bytes.asDoubleBuffer().put(input, i, count);
+            digest.update(bytes.array(), 0, 8 * count);
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Key of the result of a stage
+     *
+     * @param parent key of what the stage received, null when there is no cache
+     * @param stage name of the stage
+     * @param params parameters of the stage
+     * @return the key, null if parent is null
+     */
+    public static String key(String parent, String stage, double... params) {
+        if (parent == null) {
+            return null;
+        }
+        MessageDigest digest = sha256();
+        ByteBuffer bytes = ByteBuffer.allocate(4 + 8 * params.length).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(VERSION);
+        for (double param : params) {
+            bytes.putDouble(param);
+        }
+        digest.update(parent.getBytes(StandardCharsets.US_ASCII));
+        digest.update(stage.getBytes(StandardCharsets.UTF_8));
+        digest.update(bytes.array());
+        return hex(digest.digest());
+    }
+
+    /**
+     * The result of a stage from the cache, or computed and put in the cache
+     *
+     * @param cache the cache, null for no cache
+     * @param key key of the result
+     * @param stage computes the result
+     * @return the result
+     */
+    public static double[] cached(StageCache cache, String key, Supplier<double[]> stage) {
+        return cache == null ? stage.get() : cache.compute(key, stage);
+    }
+
+    /**
+     * The result of a stage from the cache, or computed and put in the cache
+     *
+     * @param key key of the result
+     * @param stage computes the result
+     * @return the result
+     * @apiNote Two threads asking the same missing key both compute it, the last one written is kept.
+     */
+    public double[] compute(String key, Supplier<double[]> stage) {
+        double[] values = get(key);
+        if (values == null) {
+            values = stage.get();
+            put(key, values);
+        }
+        return values;
+    }
+
+    /**
+     * @param key key of the result
+     * @return the result, null if it is not in the cache
+     */
+    public double[] get(String key) {
+        File file = file(key);
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses++;
+                return null;
+            }
+        }
+
+        double[] values = read(file, key);
+        synchronized (this) {
+            if (values == null) {
+                // Damaged or deleted by hand, forget it
+                remove(key);
+                misses++;
+            } else {
+                file.setLastModified(System.currentTimeMillis());
+                hits++;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Put a result in the cache, the least recently used entries are deleted if the cache is too big
+     *
+     * @param key key of the result
+     * @param values the result
+     */
+    public void put(String key, double[] values) {
+        long size = HEADER_SIZE + 8L * values.length;
+        if (size > maxBytes) {
+            return;
+        }
+
+        // Written aside then renamed, a reader never sees half a file
+        File file = file(key);
+        File tmp;
+        try {
+            tmp = File.createTempFile(key, ".tmp", dir);
+        }
+        catch (IOException e) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.allocate((int) Math.min(size, 1 << 20)).order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.put(unhex(key));
+            out.putInt(values.length);
+            for (int i = 0; i < values.length; ) {
+                int count = Math.min(out.remaining() / 8, values.length - i);
+                out.asDoubleBuffer().put(values, i, count);
+                out.position(out.position() + 8 * count);
+                i += count;
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                out.clear();
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        catch (IOException e) {
+            // Only a cache, the result will be computed again
+            tmp.delete();
+            return;
+        }
+
+        synchronized (this) {
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) {
+                tmp.delete();
+                return;
+            }
+            Long old = entries.put(key, size);
+            totalBytes += size - (old == null ? 0 : old);
+            evict();
+        }
+    }
+
+    /**
+     * @return number of results found in the cache
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of results that were not in the cache
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return size of the entries in bytes
+     */
+    public synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return hits + " trouvés, " + misses + " calculés, " + entries.size() + " entrées, " + (totalBytes >> 20)
+                + " Mo sur " + (maxBytes >> 20) + " Mo";
+    }
+
+    // Delete the least recently used entries until the cache is small enough, called with the lock
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> oldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            file(entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            oldest.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        file(key).delete();
+    }
+
+    private File file(String key) {
+        return new File(dir, key + EXTENSION);
+    }
+
+    // null if the file is missing or is not the entry of this key
+    private static double[] read(File file, String key) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer in = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+                // read until full
+            }
+            in.flip();
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            byte[] stored = new byte[32];
+            in.get(stored);
+            if (!Arrays.equals(stored, unhex(key))) {
+                return null;
+            }
+            int length = in.getInt();
+            if (length < 0 || in.remaining() != 8L * length) {
+                return null;
+            }
+            double[] values = new double[length];
+            in.asDoubleBuffer().get(values);
+            return values;
+        }
+        catch (IOException | BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            text.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return text.toString();
+    }
+
+    private static byte[] unhex(String text) {
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Time and memory of one stage of Pauvocoder or of one read / save of StdAudio : wall time, samples processed, bytes
+ * allocated, real-time factor and peak heap.
+ *
+ * @apiNote A stage calls start at its beginning and end when its result is ready, a stage that fails is not recorded.
+ * The measures are written as one JSON object per line in the file given by -Dpauvocoder.metrics=<file>, and sent as
+ * the JFR event pauvocoder.Stage when a recording is running ( -XX:StartFlightRecording ), so a whole batch can be
+ * profiled without an agent. With neither of them start returns a probe that does nothing, the stages cost the same
+ * as before.
+ * The allocated bytes are those of the thread that runs the stage ( not of a pool it uses ). The peak heap is the sum
+ * of the peaks of the heap pools, reset when a stage starts : it is an upper bound. The pools belong to the whole JVM,
+ * so the peak only means something when one stage runs at a time ( main, Batch ). JobRunner runs several stages at
+ * once and calls withoutPeakHeap, the pools are then never reset and peakHeapBytes is -1.
+ */
+public final class StageMetrics {
+
+    /**
+     * The measure of a stage seen by JFR
+     */
+    @Name("pauvocoder.Stage")
+    @Label("Pauvocoder Stage")
+    @Category("Pauvocoder")
+    @Description("One stage of Pauvocoder or one read / save of StdAudio")
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Samples")
+        long samples;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+
+        @Label("Real-time Factor")
+        @Description("Seconds of audio processed per second")
+        double realTime;
+
+        @Label("Peak Heap")
+        @Description("-1 when several stages run at once")
+        @DataAmount
+        long peakHeapBytes;
+    }
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(StageEvent.class);
+    private static final String FILE = System.getProperty("pauvocoder.metrics");
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = new ArrayList<>();
+    private static final StageMetrics DISABLED = new StageMetrics(null, 0, 0, false, null);
+    private static Writer jsonLines; // opened by the first stage that ends
+    private static volatile boolean peakHeapMeasured = true;
+
+    static {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                HEAP_POOLS.add(pool);
+            }
+        }
+    }
+
+    private final String stage; // null when nothing is measured
+    private final long start;
+    private final long startAllocated;
+    private final boolean measurePeak; // false when the pools were not reset for this stage
+    private final StageEvent event; // null when JFR does not record it
+
+    private StageMetrics(String stage, long start, long startAllocated, boolean measurePeak, StageEvent event) {
+        this.stage = stage;
+        this.start = start;
+        this.startAllocated = startAllocated;
+        this.measurePeak = measurePeak;
+        this.event = event;
+    }
+
+    /**
+     * Stop measuring the peak heap, for good : resetting the pools for one stage would spoil the peak of the stages
+     * running on the other threads
+     */
+    public static void withoutPeakHeap() {
+        peakHeapMeasured = false;
+    }
+
+    /**
+     * Start measuring a stage
+     *
+     * @param stage name of the stage
+     * @return the probe to end when the stage is done
+     */
+    public static StageMetrics start(String stage) {
+        boolean jfr = EVENT_TYPE.isEnabled();
+        if (FILE == null && !jfr) {
+            return DISABLED;
+        }
+
+        boolean measurePeak = peakHeapMeasured;
+        if (measurePeak) {
+            for (MemoryPoolMXBean pool : HEAP_POOLS) {
+                pool.resetPeakUsage();
+            }
+        }
+        StageEvent event = null;
+        if (jfr) {
+            event = new StageEvent();
+            event.begin();
+        }
+        return new StageMetrics(stage, System.nanoTime(), allocatedBytes(), measurePeak, event);
+    }
+
+    /**
+     * End the measure and export it
+     *
+     * @param samples number of samples processed
+     */
+    public void end(long samples) {
+        if (stage == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated;
+        long peakHeap = measurePeak ? 0 : -1;
+        if (measurePeak) {
+            for (MemoryPoolMXBean pool : HEAP_POOLS) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        double realTime = (double) samples / StdAudio.SAMPLE_RATE / Math.max(nanos / 1e9, 1e-9);
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage;
+                event.samples = samples;
+                event.allocatedBytes = allocated;
+                event.realTime = realTime;
+                event.peakHeapBytes = peakHeap;
+                event.commit();
+            }
+        }
+
+        if (FILE != null) {
+            write(String.format(Locale.ROOT, "{\"time\":\"%s\",\"stage\":\"%s\",\"thread\":\"%s\",\"nanos\":%d,"
+                            + "\"samples\":%d,\"allocatedBytes\":%d,\"realTime\":%.3f,\"peakHeapBytes\":%d}",
+                    Instant.now(), escape(stage), escape(Thread.currentThread().getName()), nanos, samples,
+                    allocated, realTime, peakHeap));
+        }
+    }
+
+    // Bytes allocated by the current thread since it started, -1 if the JVM does not count them
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    // One line per stage, flushed so that the file is complete even if the JVM is stopped
+    private static synchronized void write(String line) {
+        try {
+            if (jsonLines == null) {
+                jsonLines = new BufferedWriter(new FileWriter(FILE, true));
+            }
+            jsonLines.write(line);
+            jsonLines.write('\n');
+            jsonLines.flush();
+        }
+        catch (IOException e) {
+            // The measures are lost, not the stage
+            System.err.println("could not write metrics to '" + FILE + "' : " + e.getMessage());
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
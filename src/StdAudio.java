@@ -14,10 +14,22 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 
 import javax.sound.sampled.AudioFileFormat;
@@ -236,39 +248,42 @@ public final class StdAudio {
     private static LinkedList<BackgroundRunnable> backgroundRunnables = new LinkedList<>();
 
     // for recording audio
-    private static QueueOfDoubles recordedSamples = null;
+    private static SampleBuffer recordedSamples = null;
     private static boolean isRecording = false;
 
     private StdAudio() {
         // can not instantiate
     }
 
-    // static initializer
-    static {
-        init();
+    // the audio stream is opened by the first play() or drain(), so that reading and
+    // saving files also work on a machine without sound card
+    private static void ensureOpen() {
+        if (line == null) init();
     }
 
     // open up an audio stream
-    private static void init() {
+    private static synchronized void init() {
+        if (line != null) return;
         try {
             // 44,100 Hz, 16-bit audio, monaural, signed PCM, little endian
             AudioFormat format = new AudioFormat((float) SAMPLE_RATE, BITS_PER_SAMPLE, MONAURAL, SIGNED, LITTLE_ENDIAN);
             DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
 
-            line = (SourceDataLine) AudioSystem.getLine(info);
-            line.open(format, SAMPLE_BUFFER_SIZE * BYTES_PER_SAMPLE);
+            SourceDataLine opened = (SourceDataLine) AudioSystem.getLine(info);
+            opened.open(format, SAMPLE_BUFFER_SIZE * BYTES_PER_SAMPLE);
 
             // the internal buffer is a fraction of the actual buffer size, this choice is arbitrary
             // it gets divided because we can't expect the buffered data to line up exactly with when
             // the sound card decides to push out its samples.
             buffer = new byte[SAMPLE_BUFFER_SIZE * BYTES_PER_SAMPLE/3];
+
+            // no sound gets made before this call
+            opened.start();
+            line = opened;
         }
-        catch (LineUnavailableException e) {
-            System.out.println(e.getMessage());
+        catch (LineUnavailableException | IllegalArgumentException e) {
+            throw new IllegalStateException("no audio line available: " + e.getMessage(), e);
         }
-
-        // no sound gets made before this call
-        line.start();
     }
 
     // get an AudioInputStream object from a file
@@ -316,6 +331,7 @@ public final class StdAudio {
      * Sends any queued samples to the sound card.
      */
     public static void drain() {
+        ensureOpen();
         if (bufferSize > 0) {
             line.write(buffer, 0, bufferSize);
             bufferSize = 0;
@@ -343,6 +359,7 @@ public final class StdAudio {
      */
     public static void play(double sample) {
         if (Double.isNaN(sample)) throw new IllegalArgumentException("sample is NaN");
+        ensureOpen();
 
         // clip if outside [-1, +1]
         if (sample < -1.0) sample = -1.0;
@@ -350,7 +367,7 @@ public final class StdAudio {
 
         // save sample if recording
         if (isRecording) {
-            recordedSamples.enqueue(sample);
+            recordedSamples.add(sample);
         }
 
         // convert to bytes
@@ -376,8 +393,59 @@ public final class StdAudio {
      */
     public static void play(double[] samples) {
         if (samples == null) throw new IllegalArgumentException("argument to play() is null");
-        for (int i = 0; i < samples.length; i++) {
-            play(samples[i]);
+        play(samples, 0, samples.length);
+    }
+
+    /**
+     * Writes {@code length} samples (between –1.0 and +1.0), starting at
+     * {@code samples[offset]}, to standard audio.
+     * If a sample is outside the range, it will be clipped.
+     * The samples are converted in one loop into the internal buffer, which
+     * is sent to the sound card each time it is full.
+     *
+     * @param  samples the array of samples to play
+     * @param  offset the index of the first sample to play
+     * @param  length the number of samples to play
+     * @throws IllegalArgumentException if any sample is {@code Double.NaN}
+     * @throws IllegalArgumentException if {@code samples} is {@code null}
+     * @throws IndexOutOfBoundsException if {@code offset} and {@code length} are not inside {@code samples}
+     */
+    public static void play(double[] samples, int offset, int length) {
+        if (samples == null) throw new IllegalArgumentException("argument to play() is null");
+        if (offset < 0 || length < 0 || offset > samples.length - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + samples.length);
+        }
+        ensureOpen();
+
+        boolean recording = isRecording;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            // convert as many samples as the internal buffer can hold
+            int count = Math.min(end - i, (buffer.length - bufferSize) / BYTES_PER_SAMPLE);
+            for (int j = 0; j < count; j++, i++) {
+                double sample = samples[i];
+                if (Double.isNaN(sample)) throw new IllegalArgumentException("sample is NaN");
+
+                // clip if outside [-1, +1]
+                if (sample < -1.0) sample = -1.0;
+                if (sample > +1.0) sample = +1.0;
+
+                // save sample if recording
+                if (recording) recordedSamples.add(sample);
+
+                // convert to bytes
+                short s = (short) (MAX_16_BIT * sample);
+                if (sample == 1.0) s = Short.MAX_VALUE;   // special case since 32768 not a short
+                buffer[bufferSize++] = (byte) s;
+                buffer[bufferSize++] = (byte) (s >> 8);   // little endian
+            }
+
+            // one write per full buffer
+            if (buffer.length - bufferSize < BYTES_PER_SAMPLE) {
+                line.write(buffer, 0, bufferSize);
+                bufferSize = 0;
+            }
         }
     }
 
@@ -395,8 +463,7 @@ public final class StdAudio {
         // may not work for streaming file formats
         if (isRecording) {
             double[] samples = read(filename);
-            for (double sample : samples)
-                recordedSamples.enqueue(sample);
+            recordedSamples.addAll(samples, 0, samples.length);
         }
 
         AudioInputStream ais = getAudioInputStreamFromFile(filename);
@@ -432,28 +499,38 @@ public final class StdAudio {
      * The file extension must be either {@code .wav}, {@code .au},
      * or {@code .aiff}.
      *
+     * A 16-bit PCM WAVE file at 44,100 Hz on the local file system is
+     * decoded straight from a memory mapped file into the result. The
+     * mapping is released before this method returns, so reading many
+     * files does not keep address space or file handles until the next GC.
+     *
      * @param  filename the name of the audio file
      * @return the array of samples
      */
     public static double[] read(String filename) {
+        StageMetrics metrics = StageMetrics.start("read");
+
+        // fast path, no AudioInputStream and no intermediate copies
+        double[] mapped = readMappedWav(filename);
+        if (mapped != null) {
+            metrics.end(mapped.length);
+            return mapped;
+        }
+
         // 4K buffer (must be a multiple of 2 for monaural or 4 for stereo)
         int READ_BUFFER_SIZE = 4096;
 
         // create AudioInputStream from file
         AudioInputStream fromAudioInputStream = getAudioInputStreamFromFile(filename);
-        AudioFormat fromAudioFormat = fromAudioInputStream.getFormat();
-
-        // normalize AudioInputStream to 44,100 Hz, 16-bit audio, monaural, signed PCM, little endian
-        // https://docs.oracle.com/javase/tutorial/sound/converters.html
-        AudioFormat toAudioFormat = new AudioFormat((float) SAMPLE_RATE, BITS_PER_SAMPLE, MONAURAL, SIGNED, LITTLE_ENDIAN);
-        if (!AudioSystem.isConversionSupported(toAudioFormat, fromAudioFormat)) {
-            throw new IllegalArgumentException("system cannot convert from " + fromAudioFormat + " to " + toAudioFormat);
-        }
-        AudioInputStream toAudioInputStream = AudioSystem.getAudioInputStream(toAudioFormat, fromAudioInputStream);
+        AudioInputStream toAudioInputStream = getNormalizedAudioInputStream(fromAudioInputStream);
 
         // extract the audio data and convert to a double[] with each sample between -1 and +1
         try {
-            QueueOfDoubles queue = new QueueOfDoubles();
+            // the number of frames is often known, then the buffer never grows and its array is returned as is
+            long frameLength = toAudioInputStream.getFrameLength();
+            SampleBuffer queue = frameLength > 0 && frameLength <= SampleBuffer.MAX_CAPACITY
+                    ? new SampleBuffer((int) frameLength)
+                    : new SampleBuffer();
             byte[] bytes = new byte[READ_BUFFER_SIZE];
             int count;
             while ((count = toAudioInputStream.read(bytes, 0, READ_BUFFER_SIZE)) != -1) {
@@ -461,7 +538,7 @@ public final class StdAudio {
                 // little endian, monaural
                 for (int i = 0; i < count/2; i++) {
                     double sample = ((short) (((bytes[2*i+1] & 0xFF) << 8) | (bytes[2*i] & 0xFF))) / ((double) MAX_16_BIT);
-                    queue.enqueue(sample);
+                    queue.add(sample);
                 }
 
                 // little endian, stereo (perhaps, for a future version that supports stereo)
@@ -470,19 +547,236 @@ public final class StdAudio {
                     double left  = ((short) (((bytes[4*i + 1] & 0xFF) << 8) | (bytes[4*i + 0] & 0xFF))) / ((double) MAX_16_BIT);
                     double right = ((short) (((bytes[4*i + 3] & 0xFF) << 8) | (bytes[4*i + 2] & 0xFF))) / ((double) MAX_16_BIT);
                     double sample = (left + right) / 2.0;
-                    queue.enqueue(sample);
+                    queue.add(sample);
                 }
                 */
             }
             toAudioInputStream.close();
             fromAudioInputStream.close();
-            return queue.toArray();
+            double[] samples = queue.toArray();
+            metrics.end(samples.length);
+            return samples;
+        }
+        catch (IOException ioe) {
+            throw new IllegalArgumentException("could not read audio file '" + filename + "'", ioe);
+        }
+    }
+
+    /**
+     * Reads audio samples from a file (in WAVE, AU, AIFF, or MIDI format)
+     * block by block, so that the whole file never has to be in memory.
+     * Each block is sent to {@code sink} as soon as it is decoded, with
+     * values between –1.0 and +1.0. The array given to {@code sink} is
+     * reused for the next block.
+     *
+     * @param  filename the name of the audio file
+     * @param  sink receives the blocks of samples
+     * @throws IllegalArgumentException if unable to read {@code filename}
+     * @throws IllegalArgumentException if {@code sink} is {@code null}
+     */
+    public static void read(String filename, SampleSink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink is null");
+        }
+
+        StageMetrics metrics = StageMetrics.start("read");
+        long total = 0;
+
+        // 4K buffer (must be a multiple of 2 for monaural)
+        int READ_BUFFER_SIZE = 4096;
+
+        AudioInputStream fromAudioInputStream = getAudioInputStreamFromFile(filename);
+        try (AudioInputStream toAudioInputStream = getNormalizedAudioInputStream(fromAudioInputStream)) {
+            byte[] bytes = new byte[READ_BUFFER_SIZE];
+            double[] samples = new double[READ_BUFFER_SIZE / 2];
+            int pending = 0;  // odd byte left by the previous read
+            int count;
+            while ((count = toAudioInputStream.read(bytes, pending, READ_BUFFER_SIZE - pending)) != -1) {
+                count += pending;
+
+                // little endian, monaural
+                int n = count / 2;
+                for (int i = 0; i < n; i++) {
+                    samples[i] = ((short) (((bytes[2*i+1] & 0xFF) << 8) | (bytes[2*i] & 0xFF))) / ((double) MAX_16_BIT);
+                }
+                if (n > 0) {
+                    sink.write(samples, 0, n);
+                    total += n;
+                }
+
+                pending = count % 2;
+                if (pending == 1) {
+                    bytes[0] = bytes[count - 1];
+                }
+            }
+            fromAudioInputStream.close();
+            metrics.end(total);
+        }
+        catch (IOException ioe) {
+            throw new IllegalArgumentException("could not read audio file '" + filename + "'", ioe);
+        }
+    }
+
+    // maximum number of bytes mapped at once, a mapping is limited to 2 GB
+    private static final int MAP_WINDOW_SIZE = 1 << 30;
+
+    // WAVE_FORMAT_PCM and WAVE_FORMAT_EXTENSIBLE tags of the fmt chunk
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    // size of the fmt chunk of WAVE_FORMAT_EXTENSIBLE, and its SubFormat GUID for PCM (at byte 24)
+    private static final int EXTENSIBLE_FMT_SIZE = 40;
+    private static final byte[] SUBTYPE_PCM = {
+        0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x10, 0x00, (byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71
+    };
+
+    // Unsafe.invokeCleaner, releases a mapping without waiting for the GC, null if this JVM does not have it
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    // reads a 16-bit PCM WAVE file (monaural or stereo, 44,100 Hz) by mapping it in memory
+    // returns null if the file is not on the local file system or has another format
+    private static double[] readMappedWav(String filename) {
+        if (filename == null) return null;
+        File file = new File(filename);
+        if (!file.isFile()) return null;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(EXTENSIBLE_FMT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (fileSize < 12 || !readChunkHeader(channel, 0, header, 12)) return null;
+            if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) return null;  // "RIFF", "WAVE"
+
+            // walk the chunks until "fmt " and "data" are found
+            int channels = 0;
+            boolean supported = false;
+            long dataStart = -1;
+            long dataSize = 0;
+            long position = 12;
+            while (position + 8 <= fileSize) {
+                if (!readChunkHeader(channel, position, header, 8)) return null;
+                int id = header.getInt(0);
+                long size = header.getInt(4) & 0xFFFFFFFFL;
+                if (id == 0x20746D66) {   // "fmt "
+                    if (size < 16) {
+                        throw new IllegalArgumentException("audio file '" + filename + "' has a fmt chunk of "
+                                + size + " bytes, at least 16 are needed");
+                    }
+                    if (!readChunkHeader(channel, position + 8, header, 16)) return null;
+                    int audioFormat = header.getShort(0) & 0xFFFF;
+                    channels = header.getShort(2);
+                    int sampleRate = header.getInt(4);
+                    int bitsPerSample = header.getShort(14);
+                    boolean pcm = audioFormat == WAVE_FORMAT_PCM;
+                    if (audioFormat == WAVE_FORMAT_EXTENSIBLE) {
+                        // the real format is the SubFormat GUID, it can be float or compressed data
+                        if (size < EXTENSIBLE_FMT_SIZE) {
+                            throw new IllegalArgumentException("audio file '" + filename + "' has an extensible fmt"
+                                    + " chunk of " + size + " bytes, " + EXTENSIBLE_FMT_SIZE + " are needed");
+                        }
+                        if (!readChunkHeader(channel, position + 8, header, EXTENSIBLE_FMT_SIZE)) return null;
+                        byte[] subFormat = new byte[SUBTYPE_PCM.length];
+                        header.get(24, subFormat);
+                        pcm = Arrays.equals(subFormat, SUBTYPE_PCM);
+                    }
+                    supported = pcm && bitsPerSample == BITS_PER_SAMPLE && sampleRate == SAMPLE_RATE
+                            && (channels == MONAURAL || channels == STEREO);
+                }
+                else if (id == 0x61746164) {   // "data"
+                    dataStart = position + 8;
+                    dataSize = Math.min(size, fileSize - dataStart);   // some writers leave a wrong size
+                    break;
+                }
+                position += 8 + size + (size & 1);   // chunks are padded to an even size
+            }
+            if (!supported || dataStart < 0) return null;
+
+            // pre-sized result, each frame is decoded straight from the mapped file
+            int frameSize = BYTES_PER_SAMPLE * channels;
+            long frames = dataSize / frameSize;
+            if (frames > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("audio file '" + filename + "' is too long");
+            }
+            double[] samples = new double[(int) frames];
+            int n = 0;
+            long windowFrames = MAP_WINDOW_SIZE / frameSize;
+            for (long first = 0; first < frames; first += windowFrames) {
+                int count = (int) Math.min(windowFrames, frames - first);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataStart + first * frameSize, (long) count * frameSize);
+                try {
+                    mapped.order(ByteOrder.LITTLE_ENDIAN);
+                    if (channels == MONAURAL) {
+                        for (int i = 0; i < count; i++) {
+                            samples[n++] = mapped.getShort(2*i) / ((double) MAX_16_BIT);
+                        }
+                    }
+                    else {
+                        // stereo is mixed down to monaural, the same way as read() does it
+                        for (int i = 0; i < count; i++) {
+                            int left = mapped.getShort(4*i);
+                            int right = mapped.getShort(4*i + 2);
+                            samples[n++] = ((left + right) / 2.0) / ((double) MAX_16_BIT);
+                        }
+                    }
+                }
+                finally {
+                    unmap(mapped);
+                }
+            }
+            return samples;
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("could not read audio file '" + filename + "'", ioe);
         }
     }
 
+    // releases the mapping now, the buffer must not be used after this call
+    private static void unmap(MappedByteBuffer mapped) {
+        if (INVOKE_CLEANER == null) return;   // released by the GC
+        try {
+            INVOKE_CLEANER.invokeExact(mapped);
+        }
+        catch (Throwable e) {
+            // released by the GC
+        }
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            MethodHandle invokeCleaner = MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+            return invokeCleaner.bindTo(theUnsafe.get(null))
+                    .asType(MethodType.methodType(void.class, MappedByteBuffer.class));
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // reads length bytes at position into header, false if the file is too short
+    private static boolean readChunkHeader(FileChannel channel, long position, ByteBuffer header, int length)
+            throws IOException {
+        header.clear().limit(length);
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) return false;
+        }
+        return true;
+    }
+
+    // normalize AudioInputStream to 44,100 Hz, 16-bit audio, monaural, signed PCM, little endian
+    // https://docs.oracle.com/javase/tutorial/sound/converters.html
+    private static AudioInputStream getNormalizedAudioInputStream(AudioInputStream fromAudioInputStream) {
+        AudioFormat fromAudioFormat = fromAudioInputStream.getFormat();
+        AudioFormat toAudioFormat = new AudioFormat((float) SAMPLE_RATE, BITS_PER_SAMPLE, MONAURAL, SIGNED, LITTLE_ENDIAN);
+        if (!AudioSystem.isConversionSupported(toAudioFormat, fromAudioFormat)) {
+            throw new IllegalArgumentException("system cannot convert from " + fromAudioFormat + " to " + toAudioFormat);
+        }
+        return AudioSystem.getAudioInputStream(toAudioFormat, fromAudioInputStream);
+    }
+
     /**
      * Saves the audio samples as an audio file (using WAV, AU, or AIFF format).
      * The file extension must be either {@code .wav}, {@code .au},
@@ -510,6 +804,17 @@ public final class StdAudio {
             throw new IllegalArgumentException("argument to save() is the empty string");
         }
 
+        StageMetrics metrics = StageMetrics.start("save");
+
+        // WAVE files are written directly, without the intermediate byte[] and AudioInputStream
+        if (filename.endsWith(".wav") || filename.endsWith(".WAV")) {
+            try (WavWriter writer = new WavWriter(filename)) {
+                writer.write(samples, 0, samples.length);
+            }
+            metrics.end(samples.length);
+            return;
+        }
+
         // assumes 16-bit samples with sample rate = 44,100 Hz
         // use 16-bit audio, monaural, signed PCM, little Endian
         AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, MONAURAL, SIGNED, LITTLE_ENDIAN);
@@ -551,6 +856,7 @@ public final class StdAudio {
         catch (IOException ioe) {
             throw new IllegalArgumentException("unable to save file '" + filename + "'", ioe);
         }
+        metrics.end(samples.length);
     }
 
     /**
@@ -673,7 +979,7 @@ public final class StdAudio {
      */
     public static void startRecording() {
         if (!isRecording) {
-            recordedSamples = new QueueOfDoubles();
+            recordedSamples = new SampleBuffer();
             isRecording = true;
         }
         else {
@@ -698,46 +1004,228 @@ public final class StdAudio {
     }
 
 
+    /**
+     * Writes a WAVE file (44,100 Hz, 16-bit audio, monaural, signed PCM, little endian)
+     * directly to a {@link FileChannel}. The samples are converted through a reusable
+     * direct buffer, and can be appended block by block, so it can be the
+     * {@link SampleSink} of a streaming pipeline. The sizes in the header are
+     * written when the writer is closed.
+     */
+    public static final class WavWriter implements SampleSink, AutoCloseable {
+        private static final int HEADER_SIZE = 44;
+        private static final int WRITE_BUFFER_SIZE = 1 << 16;   // 64K, must be a multiple of 2
+
+        private final String filename;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long samplesWritten = 0;
+        private boolean closed = false;
+
+        /**
+         * Creates (or truncates) the file and writes a temporary header.
+         *
+         * @param  filename the name of the WAVE file
+         * @throws IllegalArgumentException if unable to create {@code filename}
+         */
+        public WavWriter(String filename) {
+            if (filename == null) {
+                throw new IllegalArgumentException("filename is null");
+            }
+            this.filename = filename;
+            FileChannel opened = null;
+            try {
+                opened = FileChannel.open(new File(filename).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                channel = opened;
+                writeHeader();
+                channel.position(HEADER_SIZE);   // the header is written at its position, the samples go after
+            }
+            catch (IOException ioe) {
+                // close() will never be called on a writer that was not created, the channel is closed here
+                IllegalArgumentException e = new IllegalArgumentException("unable to save file '" + filename + "'", ioe);
+                if (opened != null) {
+                    try {
+                        opened.close();
+                    }
+                    catch (IOException closeError) {
+                        e.addSuppressed(closeError);
+                    }
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Appends samples (between –1.0 and +1.0) to the file.
+         *
+         * @param  samples the samples
+         * @param  offset index of the first sample
+         * @param  length number of samples
+         * @throws IllegalArgumentException if unable to write to the file
+         */
+        @Override
+        public void write(double[] samples, int offset, int length) {
+            if (closed) {
+                throw new IllegalStateException("write() called after close()");
+            }
+            try {
+                for (int i = offset; i < offset + length; i++) {
+                    int temp = (short) (samples[i] * MAX_16_BIT);
+                    if (samples[i] == 1.0) temp = Short.MAX_VALUE;   // special case since 32768 not a short
+                    buffer.putShort((short) temp);
+                    if (!buffer.hasRemaining()) {
+                        flushBuffer();
+                    }
+                }
+                samplesWritten += length;
+            }
+            catch (IOException ioe) {
+                throw new IllegalArgumentException("unable to save file '" + filename + "'", ioe);
+            }
+        }
+
+        /**
+         * Returns the number of samples written so far.
+         *
+         * @return the number of samples written so far
+         */
+        public long size() {
+            return samplesWritten;
+        }
+
+        /**
+         * Writes the pending samples and the final header, then closes the file.
+         *
+         * @throws IllegalArgumentException if unable to write to the file
+         */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            try {
+                flushBuffer();
+                writeHeader();
+                channel.close();
+            }
+            catch (IOException ioe) {
+                throw new IllegalArgumentException("unable to save file '" + filename + "'", ioe);
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        // RIFF header, the sizes are the ones of the samples written so far
+        private void writeHeader() throws IOException {
+            long dataSize = samplesWritten * BYTES_PER_SAMPLE;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0x46464952);                       // "RIFF"
+            header.putInt((int) Math.min(0xFFFFFFFFL, 36 + dataSize));
+            header.putInt(0x45564157);                       // "WAVE"
+            header.putInt(0x20746D66);                       // "fmt "
+            header.putInt(16);
+            header.putShort((short) WAVE_FORMAT_PCM);
+            header.putShort((short) MONAURAL);
+            header.putInt(SAMPLE_RATE);
+            header.putInt(SAMPLE_RATE * BYTES_PER_SAMPLE * MONAURAL);
+            header.putShort((short) (BYTES_PER_SAMPLE * MONAURAL));
+            header.putShort((short) BITS_PER_SAMPLE);
+            header.putInt(0x61746164);                       // "data"
+            header.putInt((int) Math.min(0xFFFFFFFFL, dataSize));
+            header.flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+        }
+    }
+
+
     /***************************************************************************
      * Helper class for reading and recording audio.
      ***************************************************************************/
-    private static class QueueOfDoubles {
-        private static final int INIT_CAPACITY = 16;
-        private double[] a;   // array of doubles
-        private int n;        // number of items in queue
+    private static class SampleBuffer {
+        private static final int INIT_CAPACITY = 4096;
+        private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;   // some VMs reserve header words
+        private double[][] chunks = new double[4][];   // the full chunks, then the current one
+        private int chunkCount;   // number of chunks in use
+        private double[] last;    // current chunk, chunks[chunkCount - 1]
+        private int lastN;        // number of items in the current chunk
+        private int n;            // number of items in buffer
+
+        // create an empty buffer
+        public SampleBuffer() {
+            this(INIT_CAPACITY);
+        }
+
+        // create an empty buffer that can hold capacity items without growing
+        public SampleBuffer(int capacity) {
+            addChunk(Math.max(1, capacity));
+        }
 
-        // create an empty queue
-        public QueueOfDoubles() {
-            a = new double[INIT_CAPACITY];
-            n = 0;
+        // the buffer grows by new chunks, as big as everything before them, the items already there are never copied
+        private void addChunk(int length) {
+            if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, 2 * chunkCount);
+            last = new double[length];
+            chunks[chunkCount++] = last;
+            lastN = 0;
         }
 
-        // resize the underlying array holding the items
-        private void resize(int capacity) {
-            assert capacity >= n;
-            double[] temp = new double[capacity];
-            for (int i = 0; i < n; i++)
-                temp[i] = a[i];
-            a = temp;
+        // make room for at least one more item
+        private void grow() {
+            if (n >= MAX_CAPACITY) throw new OutOfMemoryError("too many samples");
+            addChunk(Math.min(MAX_CAPACITY - n, Math.max(INIT_CAPACITY, n)));
         }
 
-        // enqueue item onto the queue
-        public void enqueue(double item) {
-            if (n == a.length) resize(2*a.length);    // double length of array if necessary
-            a[n++] = item;                            // add item
+        // add item to the end of the buffer
+        public void add(double item) {
+            if (lastN == last.length) grow();
+            last[lastN++] = item;
+            n++;
         }
 
+        // add items[offset, offset + length) to the end of the buffer
+        public void addAll(double[] items, int offset, int length) {
+            if (length > MAX_CAPACITY - n) throw new OutOfMemoryError("too many samples");
+            while (length > 0) {
+                if (lastN == last.length) grow();
+                int count = Math.min(length, last.length - lastN);
+                System.arraycopy(items, offset, last, lastN, count);
+                lastN += count;
+                n += count;
+                offset += count;
+                length -= count;
+            }
+        }
 
-        // number of items in queue
+        // number of items in buffer
         public int size() {
             return n;
         }
 
-        // return the items as an array of length n
+        // return the items as an array of length n, the buffer must not be used afterwards
+        // a single full chunk is handed over as is, otherwise the chunks are copied once into the result
         public double[] toArray() {
-            double[] result = new double[n];
-            for (int i = 0; i < n; i++)
-                result[i] = a[i];
+            double[] result;
+            if (chunkCount == 1 && lastN == last.length) {
+                result = last;
+            }
+            else {
+                result = new double[n];
+                int position = 0;
+                for (int c = 0; c < chunkCount; c++) {
+                    int count = c == chunkCount - 1 ? lastN : chunks[c].length;
+                    System.arraycopy(chunks[c], 0, result, position, count);
+                    position += count;
+                }
+            }
+            chunks = null;
+            last = null;
             return result;
         }
 
@@ -31,6 +31,7 @@ import java.awt.Component;
 import java.awt.FileDialog;
 import java.awt.Font;
 import java.awt.FontMetrics;
+import java.awt.GraphicsEnvironment;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
@@ -704,6 +705,9 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
 
     private static JFrame frame;
 
+    // no display (or -Dstddraw.headless=true): no window, the drawing stays in offscreenImage
+    private static final boolean headless = GraphicsEnvironment.isHeadless() || Boolean.getBoolean("stddraw.headless");
+
 
     private static boolean isJFrameVisible = true;
 
@@ -729,6 +733,19 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         initGUI();
     }
 
+    /**
+     * Returns true if there is no drawing window: the JVM has no display
+     * or the property {@code stddraw.headless} is {@code true}.
+     * The drawing methods still draw on the canvas, which can be written
+     * to a file with {@link #save(String)}, but no Swing component is created
+     * and {@code show()} does nothing.
+     *
+     * @return {@code true} if there is no drawing window
+     */
+    public static boolean isHeadless() {
+        return headless;
+    }
+
     /**
      * Makes the drawing window visible or invisible.
      *
@@ -737,6 +754,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      */
     public static void setVisible(boolean isVisible) {
         isJFrameVisible = isVisible;
+        if (headless) return;
         frame.setVisible(isVisible);
     }
 
@@ -777,7 +795,8 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
 
 
         offscreenImage = new BufferedImage(2*width, 2*height, BufferedImage.TYPE_INT_ARGB);
-        onscreenImage  = new BufferedImage(2*width, 2*height, BufferedImage.TYPE_INT_ARGB);
+        // headless: nothing to copy to a window, save() writes the image that is drawn on
+        onscreenImage  = headless ? offscreenImage : new BufferedImage(2*width, 2*height, BufferedImage.TYPE_INT_ARGB);
         offscreen = offscreenImage.createGraphics();
         onscreen  = onscreenImage.createGraphics();
         offscreen.scale(2.0, 2.0);
@@ -800,7 +819,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
 
 
     private static void initGUI() {
-
+        if (headless) return;
 
         if (frame == null) {
             frame = new JFrame();
@@ -848,6 +867,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      * Drawing after calling this method will restore the previous window state.
      */
     public static void close() {
+        if (headless) return;
         frame.dispose();
     }
 
@@ -884,7 +904,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      */
     public static void setTitle(String title) {
         validateNotNull(title, "title");
-        frame.setTitle(title);
+        if (!headless) frame.setTitle(title);
         windowTitle = title;
     }
 
@@ -1476,6 +1496,59 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         draw();
     }
 
+    /**
+     * Draws an open polyline through the first {@code n} points
+     * (<em>x</em><sub>0</sub>, <em>y</em><sub>0</sub>),
+     * (<em>x</em><sub>1</sub>, <em>y</em><sub>1</sub>), ...,
+     * (<em>x</em><sub><em>n</em>–1</sub>, <em>y</em><sub><em>n</em>–1</sub>).
+     * The whole polyline is drawn as one path, which is much faster than
+     * one call to {@code line()} per segment.
+     *
+     * @param  x an array of the <em>x</em>-coordinates of the points
+     * @param  y an array of the <em>y</em>-coordinates of the points
+     * @param  n the number of points to use
+     * @throws IllegalArgumentException if {@code n} is negative or larger than
+     *         the length of {@code x[]} or {@code y[]}
+     * @throws IllegalArgumentException if any coordinate is either NaN or infinite
+     * @throws IllegalArgumentException if either {@code x[]} or {@code y[]} is {@code null}
+     */
+    public static void polyline(double[] x, double[] y, int n) {
+        polyline(x, y, 0, n);
+    }
+
+    /**
+     * Draws an open polyline through the points
+     * (<em>x</em><sub><em>i</em></sub>, <em>y</em><sub><em>i</em></sub>)
+     * for <em>i</em> from {@code from} (included) to {@code to} (excluded),
+     * as one path.
+     *
+     * @param  x an array of the <em>x</em>-coordinates of the points
+     * @param  y an array of the <em>y</em>-coordinates of the points
+     * @param  from the index of the first point
+     * @param  to the index after the last point
+     * @throws IllegalArgumentException unless 0 &le; {@code from} &le; {@code to} and
+     *         {@code to} is at most the length of {@code x[]} and {@code y[]}
+     * @throws IllegalArgumentException if any coordinate is either NaN or infinite
+     * @throws IllegalArgumentException if either {@code x[]} or {@code y[]} is {@code null}
+     */
+    public static void polyline(double[] x, double[] y, int from, int to) {
+        validateNotNull(x, "x-coordinate array");
+        validateNotNull(y, "y-coordinate array");
+        if (from < 0 || from > to || to > x.length || to > y.length) {
+            throw new IllegalArgumentException("range [" + from + ", " + to + ") out of bounds");
+        }
+        for (int i = from; i < to; i++) validate(x[i], "x[" + i + "]");
+        for (int i = from; i < to; i++) validate(y[i], "y[" + i + "]");
+        if (from == to) return;
+
+        GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO, to - from);
+        path.moveTo((float) scaleX(x[from]), (float) scaleY(y[from]));
+        for (int i = from + 1; i < to; i++)
+            path.lineTo((float) scaleX(x[i]), (float) scaleY(y[i]));
+        offscreen.draw(path);
+        draw();
+    }
+
     /**
      * Draws a filled polygon with the vertices
      * (<em>x</em><sub>0</sub>, <em>y</em><sub>0</sub>),
@@ -1883,6 +1956,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      * this method unless double buffering is enabled.
      */
     public static void show() {
+        if (headless) return;
         onscreen.drawImage(offscreenImage, 0, 0, null);
 
 
@@ -1894,6 +1968,40 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
     }
 
 
+    /**
+     * Copies the rectangle between (<em>x</em><sub>0</sub>, <em>y</em><sub>0</sub>) and
+     * (<em>x</em><sub>1</sub>, <em>y</em><sub>1</sub>) of the offscreen buffer
+     * to the onscreen buffer, and repaints only that part of the window.
+     * Useful for animations where only a small part of the drawing changes.
+     *
+     * @param  x0 the <em>x</em>-coordinate of one corner
+     * @param  y0 the <em>y</em>-coordinate of one corner
+     * @param  x1 the <em>x</em>-coordinate of the opposite corner
+     * @param  y1 the <em>y</em>-coordinate of the opposite corner
+     * @throws IllegalArgumentException if any coordinate is either NaN or infinite
+     */
+    public static void show(double x0, double y0, double x1, double y1) {
+        validate(x0, "x0");
+        validate(y0, "y0");
+        validate(x1, "x1");
+        validate(y1, "y1");
+        int left   = Math.max(0,      (int) Math.floor(Math.min(scaleX(x0), scaleX(x1))));
+        int right  = Math.min(width,  (int) Math.ceil(Math.max(scaleX(x0), scaleX(x1))));
+        int top    = Math.max(0,      (int) Math.floor(Math.min(scaleY(y0), scaleY(y1))));
+        int bottom = Math.min(height, (int) Math.ceil(Math.max(scaleY(y0), scaleY(y1))));
+        if (left >= right || top >= bottom || headless) return;
+
+        // the buffers are twice the size of the canvas
+        onscreen.drawImage(offscreenImage, 2*left, 2*top, 2*right, 2*bottom,
+                2*left, 2*top, 2*right, 2*bottom, null);
+
+        if (frame.isVisible() != isJFrameVisible) {
+            frame.setVisible(isJFrameVisible);
+        }
+
+        frame.getContentPane().repaint(left, top, right - left, bottom - top);
+    }
+
     private static void draw() {
         if (!defer) show();
     }
@@ -0,0 +1,75 @@
+import java.util.Arrays;
+
+/**
+ * Block version of Pauvocoder.echo, the last delaySamples input samples are kept in a circular buffer.
+ *
+ * @apiNote The samples are computed one by one, as the scalar kernels do : with the SIMD kernels ( fused multiply-add )
+ * Pauvocoder.echo can differ by one ulp.
+ */
+public final class StreamingEcho implements BlockProcessor {
+
+    private static final int OUTPUT_BLOCK = 4096;
+
+    private final double attn;
+    private final double[] delayLine; // last input samples, delayLine[position] is the oldest one
+    private int position = 0;
+    private final double[] outBlock = new double[OUTPUT_BLOCK];
+
+    /**
+     * @param delayMs in msec
+     * @param attn the attenuation, must be between 0 and 1 ( 0-100% )
+     */
+    public StreamingEcho(double delayMs, double attn) {
+        if (delayMs <= 0) {
+            throw new IllegalArgumentException("Delay must be greater than 0 milliseconds.");
+        }
+        if (attn < 0 || attn > 1) {
+            throw new IllegalArgumentException("Attenuation must be between 0 and 1.");
+        }
+        this.attn = attn;
+        this.delayLine = new double[(int) (delayMs / 1000.0 * StdAudio.SAMPLE_RATE)];
+    }
+
+    @Override
+    public void process(double[] samples, int offset, int length, SampleSink out) {
+        int count = 0;
+        for (int i = offset; i < offset + length; i++) {
+            double sample = samples[i];
+
+            // Before the first delaySamples the delay line is 0, like in the array version
+            double delayed = sample;
+            if (delayLine.length > 0) {
+                delayed = delayLine[position];
+                delayLine[position] = sample;
+                position++;
+                if (position == delayLine.length) {
+                    position = 0;
+                }
+            }
+
+            // Limit values to the range [-1, 1]
+            double value = sample + delayed * attn;
+            if (value > 1.0) {
+                value = 1.0;
+            } else if (value < -1.0) {
+                value = -1.0;
+            }
+
+            outBlock[count++] = value;
+            if (count == OUTPUT_BLOCK) {
+                out.write(outBlock, 0, count);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            out.write(outBlock, 0, count);
+        }
+    }
+
+    @Override
+    public void flush(SampleSink out) {
+        // The output has the same length as the input, nothing is pending
+        Arrays.fill(delayLine, 0);
+        position = 0;
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.Arrays;
+
+/**
+ * Block version of Pauvocoder.resample, only the input samples still needed by the filter are kept.
+ */
+public final class StreamingResampler implements BlockProcessor {
+
+    private static final int OUTPUT_BLOCK = 4096;
+
+    private final double freqScale;
+    private final PolyphaseResampler resampler;
+
+    private double[] history;       // input samples from historyStart
+    private long historyStart = 0;  // absolute index of history[0]
+    private int historyLength = 0;  // number of valid samples in history
+    private long received = 0;      // number of input samples pushed
+    private long produced = 0;      // number of output samples written
+    private final double[] outBlock = new double[OUTPUT_BLOCK];
+
+    /**
+     * @param freqScale > 0, same as the resample
+     */
+    public StreamingResampler(double freqScale) {
+        if (freqScale <= 0) {
+            throw new IllegalArgumentException("freqScale must be greater than 0");
+        }
+        this.freqScale = freqScale;
+        this.resampler = freqScale == 1 ? null : new PolyphaseResampler(freqScale);
+        int halfTaps = resampler == null ? 0 : resampler.getHalfTaps();
+        this.history = new double[4 * halfTaps + (int) Math.ceil(freqScale) + OUTPUT_BLOCK];
+    }
+
+    @Override
+    public void process(double[] samples, int offset, int length, SampleSink out) {
+        if (resampler == null) {
+            // No resampling needed, same as the array version
+            received += length;
+            produced += length;
+            out.write(samples, offset, length);
+            return;
+        }
+
+        while (length > 0) {
+            discardUnused();
+            if (historyLength == history.length) {
+                history = Arrays.copyOf(history, 2 * history.length);
+            }
+            int n = Math.min(length, history.length - historyLength);
+            System.arraycopy(samples, offset, history, historyLength, n);
+            historyLength += n;
+            received += n;
+            offset += n;
+            length -= n;
+
+            // Every output whose filter is fully inside what we received
+            int halfTaps = resampler.getHalfTaps();
+            emitWhile(out, received, received - halfTaps);
+        }
+    }
+
+    @Override
+    public void flush(SampleSink out) {
+        if (resampler != null) {
+            // The samples after the end are 0, like in the array version
+            long total = (long) (received / freqScale);
+            emitWhile(out, total, Long.MAX_VALUE);
+        }
+        historyStart = 0;
+        historyLength = 0;
+        received = 0;
+        produced = 0;
+    }
+
+    // Write the outputs while produced < maxOutputs and their position is below maxIndex
+    private void emitWhile(SampleSink out, long maxOutputs, long maxIndex) {
+        int count = 0;
+        while (produced < maxOutputs) {
+            double position = produced * freqScale;
+            if ((long) position >= maxIndex) {
+                break;
+            }
+            outBlock[count++] = resampler.valueAt(history, 0, historyLength, position - historyStart);
+            produced++;
+            if (count == OUTPUT_BLOCK) {
+                out.write(outBlock, 0, count);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            out.write(outBlock, 0, count);
+        }
+    }
+
+    // Drop the samples before the filter of the next output
+    private void discardUnused() {
+        long firstNeeded = (long) (produced * freqScale) - resampler.getHalfTaps() + 1;
+        int drop = (int) Math.min(historyLength, Math.max(0, firstNeeded - historyStart));
+        if (drop > 0) {
+            System.arraycopy(history, drop, history, 0, historyLength - drop);
+            historyLength -= drop;
+            historyStart += drop;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+/**
+ * Block version of vocodeSimple, vocodeSimpleOver and vocodeSimpleOverCross.
+ *
+ * @apiNote A sequence is processed as soon as its input is there ( plus the search range for the cross correlation ),
+ * and the output before the next sequence is written right away. Only about one sequence of input and output is
+ * kept. The output has the same length as the array version, including its trailing zeros.
+ */
+public final class StreamingVocoder implements BlockProcessor {
+
+    /**
+     * The array function this processor follows
+     */
+    public enum Mode {
+        /** vocodeSimple */
+        SIMPLE,
+        /** vocodeSimpleOver */
+        OVER,
+        /** vocodeSimpleOverCross */
+        OVER_CROSS
+    }
+
+    private final Mode mode;
+    private final int seqLength;
+    private final int hopSize;     // distance between two sequences in the input
+    private final int oLap;
+    private final int outputHop;   // distance between two sequences in the output
+    private final int searchRange;
+    private final double[] window; // null for SIMPLE
+    private final CrossSearch search;
+
+    private double[] in;           // input samples from inBase
+    private long inBase = 0;
+    private int inCount = 0;
+    private long received = 0;
+
+    private final double[] acc;    // output being built, from accBase
+    private long accBase = 0;
+    private final double[] zeros;  // trailing zeros of the output
+
+    private long seq = 0;          // next sequence to process
+    private long previousStart = 0;
+
+    /**
+     * @param mode the array function to follow
+     * @param freqScale dilatation factor, same as the resample
+     */
+    public StreamingVocoder(Mode mode, double freqScale) {
+        this(mode, freqScale, new CrossSearch());
+    }
+
+    /**
+     * @param mode the array function to follow
+     * @param freqScale dilatation factor, same as the resample
+     * @param search the offset search, only used by OVER_CROSS
+     */
+    public StreamingVocoder(Mode mode, double freqScale, CrossSearch search) {
+        if (freqScale <= 0) {
+            throw new IllegalArgumentException("freqScale must be greater than 0");
+        }
+        this.mode = mode;
+        this.search = search;
+
+        // Same sequences as the array functions
+        seqLength = (int) (1024 * freqScale);
+        hopSize = (int) (seqLength * freqScale);
+        oLap = mode == Mode.SIMPLE ? 0 : seqLength / 4;
+        outputHop = seqLength - oLap;
+        searchRange = mode == Mode.OVER_CROSS ? oLap : 0;
+        window = mode == Mode.SIMPLE ? null : Pauvocoder.overlapWindow(seqLength, oLap);
+
+        in = new double[2 * (seqLength + hopSize + 2 * searchRange) + 4096];
+        acc = new double[seqLength];
+        zeros = new double[seqLength];
+    }
+
+    @Override
+    public void process(double[] samples, int offset, int length, SampleSink out) {
+        while (length > 0) {
+            discardUnused();
+            if (inCount == in.length) {
+                in = Arrays.copyOf(in, 2 * in.length);
+            }
+            int n = Math.min(length, in.length - inCount);
+            System.arraycopy(samples, offset, in, inCount, n);
+            inCount += n;
+            received += n;
+            offset += n;
+            length -= n;
+
+            while (received >= seq * hopSize + seqLength + (seq > 0 ? searchRange : 0)) {
+                processSequence(out);
+            }
+        }
+    }
+
+    @Override
+    public void flush(SampleSink out) {
+        // Same number of sequences as the array version
+        long numSequences = (received - seqLength) / hopSize + 1;
+        while (seq < numSequences) {
+            processSequence(out);
+        }
+
+        // The array version is numSequences * seqLength long, the end is zeros
+        long outputLength = numSequences * seqLength;
+        int n = (int) Math.max(0, Math.min(acc.length, outputLength - accBase));
+        emit(out, n);
+        while (accBase < outputLength) {
+            int z = (int) Math.min(zeros.length, outputLength - accBase);
+            out.write(zeros, 0, z);
+            accBase += z;
+        }
+
+        inBase = 0;
+        inCount = 0;
+        received = 0;
+        accBase = 0;
+        Arrays.fill(acc, 0);
+        seq = 0;
+        previousStart = 0;
+    }
+
+    // Process the sequence seq with the input received so far, then write the output before the next sequence
+    private void processSequence(SampleSink out) {
+        long inputStart = seq * hopSize;
+
+        // What would follow the previous sequence in the input, the overlap should look like it
+        long templateStart = previousStart + seqLength - oLap;
+        if (mode == Mode.OVER_CROSS && seq > 0 && oLap > 0 && templateStart + oLap <= received) {
+            inputStart = inBase + search.bestOffset(in, inCount, (int) (templateStart - inBase), oLap,
+                    (int) (inputStart - inBase), searchRange, seqLength);
+        }
+
+        int length = (int) Math.min(seqLength, received - inputStart);
+        if (length > 0) {
+            int from = (int) (inputStart - inBase);
+            int to = (int) (seq * outputHop - accBase);
+            if (window == null) {
+                System.arraycopy(in, from, acc, to, length);
+            } else {
+                Kernels.multiplyAccumulate(acc, to, in, from, window, 0, length);
+            }
+        }
+        previousStart = inputStart;
+        seq++;
+
+        // Nothing is added before the start of the next sequence anymore
+        emit(out, (int) (seq * outputHop - accBase));
+    }
+
+    // Write the first n samples of acc and shift the rest
+    private void emit(SampleSink out, int n) {
+        if (n <= 0) {
+            return;
+        }
+        out.write(acc, 0, n);
+        System.arraycopy(acc, n, acc, 0, acc.length - n);
+        Arrays.fill(acc, acc.length - n, acc.length, 0);
+        accBase += n;
+    }
+
+    // Drop the input that no future sequence (or template) can use
+    private void discardUnused() {
+        long keepFrom = seq * hopSize - (seq > 0 ? searchRange : 0);
+        if (mode == Mode.OVER_CROSS && seq > 0) {
+            keepFrom = Math.min(keepFrom, previousStart + seqLength - oLap);
+        }
+        int drop = (int) Math.min(inCount, Math.max(0, keepFrom - inBase));
+        if (drop > 0) {
+            System.arraycopy(in, drop, in, 0, inCount - drop);
+            inCount -= drop;
+            inBase += drop;
+        }
+    }
+}
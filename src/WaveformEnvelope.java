@@ -0,0 +1,118 @@
+/**
+ * Reduce a part of a wav to one min and one max per pixel column, so that drawing it costs the same whatever the
+ * number of samples ( used by Pauvocoder.displayWaveform ).
+ *
+ * @apiNote The envelope is traced as a zigzag min, max, min, max... from one column to the next, and drawn as a
+ * single polyline. When there are less samples than 2 points per column the samples are traced as they are.
+ */
+public final class WaveformEnvelope {
+
+    private final int columns;
+    private final double[] xs; // x of each point, in samples from the start of the part
+    private final double[] ys;
+    private int count = 0;
+
+    /**
+     * @param columns number of pixel columns, usually the width of the canvas
+     */
+    public WaveformEnvelope(int columns) {
+        if (columns < 1) {
+            throw new IllegalArgumentException("columns must be at least 1");
+        }
+        this.columns = columns;
+        this.xs = new double[2 * columns];
+        this.ys = new double[2 * columns];
+    }
+
+    /**
+     * Compute the points for wav[from, to)
+     *
+     * @param wav the wav
+     * @param from first sample
+     * @param to end of the part (excluded)
+     * @return number of points
+     */
+    public int trace(double[] wav, int from, int to) {
+        int n = to - from;
+        count = 0;
+        if (n <= xs.length) {
+            for (int i = 0; i < n; i++) {
+                xs[count] = i;
+                ys[count++] = wav[from + i];
+            }
+            return count;
+        }
+
+        for (int c = 0; c < columns; c++) {
+            int start = from + (int) ((long) n * c / columns);
+            int end = from + (int) ((long) n * (c + 1) / columns);
+            double min = wav[start];
+            double max = min;
+            for (int i = start + 1; i < end; i++) {
+                double v = wav[i];
+                if (v < min) {
+                    min = v;
+                } else if (v > max) {
+                    max = v;
+                }
+            }
+            addColumn(start - from, end - from, min, max);
+        }
+        return count;
+    }
+
+    /**
+     * Add a column whose min and max are already known ( e.g. from a summary of the wav )
+     *
+     * @param start first sample of the column, from the start of the part
+     * @param end end of the column (excluded)
+     * @param min the min of the column
+     * @param max the max of the column
+     */
+    public void addColumn(int start, int end, double min, double max) {
+        double x = (start + end) / 2.0;
+        xs[count] = x;
+        ys[count++] = min;
+        xs[count] = x;
+        ys[count++] = max;
+    }
+
+    /**
+     * Forget the points, before adding columns one by one
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * Draw the points with StdDraw, the x scale must be in samples
+     */
+    public void draw() {
+        StdDraw.polyline(xs, ys, count);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of points
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return x of the points, in samples from the start of the part ( only the first getCount() are valid )
+     */
+    public double[] getX() {
+        return xs;
+    }
+
+    /**
+     * @return y of the points ( only the first getCount() are valid )
+     */
+    public double[] getY() {
+        return ys;
+    }
+}
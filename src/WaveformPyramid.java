@@ -0,0 +1,334 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Min, max and RMS summary of a wav by blocks of 2^k samples, so a zoom on any part of a long file can be drawn in
+ * O(pixels) instead of reading every sample again.
+ *
+ * @apiNote The smallest blocks have 2^MIN_LEVEL samples, below that the samples are read directly ( it is still at most
+ * 2^MIN_LEVEL samples per column ). Each level is built from the one below, the whole summary is about n / 8 blocks.
+ * The samples after the last full block of a level are read directly, so the end of the wav is always drawn. The
+ * summary can be saved in a cache directory so that it is not built again when the file is reopened.
+ */
+public final class WaveformPyramid {
+
+    private static final int MIN_LEVEL = 4;
+    private static final int MAGIC = 0x4C4F4457; // "LODW"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+
+    private final double[] samples;
+    private final float[][] min; // min[level][block], blocks of 2^(MIN_LEVEL + level) samples
+    private final float[][] max;
+    private final float[][] rms;
+
+    private WaveformPyramid(double[] samples, float[][] min, float[][] max, float[][] rms) {
+        this.samples = samples;
+        this.min = min;
+        this.max = max;
+        this.rms = rms;
+    }
+
+    /**
+     * Build the summary of samples
+     *
+     * @param samples the wav
+     * @return the summary
+     */
+    public static WaveformPyramid build(double[] samples) {
+        int levels = 0;
+        for (long blocks = samples.length >> MIN_LEVEL; blocks >= 1; blocks >>= 1) {
+            levels++;
+        }
+        float[][] min = new float[levels][];
+        float[][] max = new float[levels][];
+        float[][] rms = new float[levels][];
+        if (levels == 0) {
+            return new WaveformPyramid(samples, min, max, rms);
+        }
+
+        // First level from the samples
+        int blockSize = 1 << MIN_LEVEL;
+        int blocks = samples.length >> MIN_LEVEL;
+        min[0] = new float[blocks];
+        max[0] = new float[blocks];
+        rms[0] = new float[blocks];
+        for (int b = 0; b < blocks; b++) {
+            int start = b * blockSize;
+            double lo = samples[start];
+            double hi = lo;
+            double squares = 0;
+            for (int i = start; i < start + blockSize; i++) {
+                double v = samples[i];
+                if (v < lo) {
+                    lo = v;
+                } else if (v > hi) {
+                    hi = v;
+                }
+                squares += v * v;
+            }
+            min[0][b] = (float) lo;
+            max[0][b] = (float) hi;
+            rms[0][b] = (float) Math.sqrt(squares / blockSize);
+        }
+
+        // Each block of the next level is made of two blocks of the previous one
+        for (int level = 1; level < levels; level++) {
+            blocks = min[level - 1].length / 2;
+            min[level] = new float[blocks];
+            max[level] = new float[blocks];
+            rms[level] = new float[blocks];
+            for (int b = 0; b < blocks; b++) {
+                min[level][b] = Math.min(min[level - 1][2 * b], min[level - 1][2 * b + 1]);
+                max[level][b] = Math.max(max[level - 1][2 * b], max[level - 1][2 * b + 1]);
+                float r0 = rms[level - 1][2 * b];
+                float r1 = rms[level - 1][2 * b + 1];
+                rms[level][b] = (float) Math.sqrt((r0 * r0 + r1 * r1) / 2.0);
+            }
+        }
+        return new WaveformPyramid(samples, min, max, rms);
+    }
+
+    /**
+     * Summary of a wav read from a file : loaded from the cache if it is up to date, otherwise built and saved there
+     *
+     * @apiNote The cache is the directory of -Dpauvocoder.cache ( the one of StageCache ) or the temporary directory,
+     * nothing is written next to the wav. A summary that can not be saved is only built again next time.
+     * @param wavFilename the file the samples come from ( StdAudio.read )
+     * @param samples the samples of the file
+     * @return the summary
+     */
+    public static WaveformPyramid forFile(String wavFilename, double[] samples) {
+        File wavFile = new File(wavFilename);
+        File lodFile = lodFile(wavFile);
+        if (wavFile.isFile() && lodFile.isFile()) {
+            WaveformPyramid loaded = load(lodFile, wavFile, samples);
+            if (loaded != null) {
+                return loaded;
+            }
+        }
+
+        WaveformPyramid pyramid = build(samples);
+        if (wavFile.isFile() && (lodFile.getParentFile().isDirectory() || lodFile.getParentFile().mkdirs())) {
+            pyramid.save(lodFile, wavFile);
+        }
+        return pyramid;
+    }
+
+    // Summary of a wav in the cache, named after the path of the wav
+    private static File lodFile(File wavFile) {
+        String dir = System.getProperty("pauvocoder.cache");
+        File cache = dir != null ? new File(dir) : new File(System.getProperty("java.io.tmpdir"), "pauvocoder");
+        String path;
+        try {
+            path = wavFile.getCanonicalPath();
+        }
+        catch (IOException e) {
+            path = wavFile.getAbsolutePath();
+        }
+        UUID name = UUID.nameUUIDFromBytes(path.getBytes(StandardCharsets.UTF_8));
+        return new File(cache, name + ".lod");
+    }
+
+    /**
+     * @return number of levels
+     */
+    public int getLevels() {
+        return min.length;
+    }
+
+    /**
+     * @return the samples summarized
+     */
+    public double[] getSamples() {
+        return samples;
+    }
+
+    /**
+     * Trace samples [from, to) in the envelope, one min and one max per column
+     *
+     * @param envelope receives the columns
+     * @param from first sample
+     * @param to end of the part (excluded)
+     * @return number of points
+     */
+    public int trace(WaveformEnvelope envelope, int from, int to) {
+        int columns = envelope.getColumns();
+        long samplesPerColumn = (long) (to - from) / columns;
+        int level = levelFor(samplesPerColumn);
+        if (level < 0) {
+            // Few samples per column, reading them is as fast
+            return envelope.trace(samples, from, to);
+        }
+
+        int shift = MIN_LEVEL + level;
+        float[] levelMin = min[level];
+        float[] levelMax = max[level];
+        int covered = levelMin.length << shift; // the samples after it are not in a full block
+        envelope.reset();
+        int points = 0;
+        for (int c = 0; c < columns; c++) {
+            int start = from + (int) ((long) (to - from) * c / columns);
+            int end = from + (int) ((long) (to - from) * (c + 1) / columns);
+            float lo = Float.POSITIVE_INFINITY;
+            float hi = Float.NEGATIVE_INFINITY;
+            if (start < covered) {
+                int first = start >> shift;
+                int last = Math.max(first + 1, Math.min(end >> shift, levelMin.length));
+                for (int b = first; b < last; b++) {
+                    lo = Math.min(lo, levelMin[b]);
+                    hi = Math.max(hi, levelMax[b]);
+                }
+            }
+            // The tail, less than one block
+            for (int i = Math.max(start, covered); i < Math.max(end, start + 1); i++) {
+                lo = Math.min(lo, (float) samples[i]);
+                hi = Math.max(hi, (float) samples[i]);
+            }
+            envelope.addColumn(start - from, end - from, lo, hi);
+            points += 2;
+        }
+        return points;
+    }
+
+    /**
+     * RMS of samples [from, to), rounded to the blocks of the best level
+     *
+     * @param from first sample
+     * @param to end of the part (excluded)
+     * @return the RMS
+     */
+    public double rms(int from, int to) {
+        int level = levelFor((to - from) / 4);
+        if (level < 0) {
+            double squares = 0;
+            for (int i = from; i < to; i++) {
+                squares += samples[i] * samples[i];
+            }
+            return to > from ? Math.sqrt(squares / (to - from)) : 0;
+        }
+        int shift = MIN_LEVEL + level;
+        int covered = rms[level].length << shift;
+        double squares = 0;
+        long count = 0;
+        if (from < covered) {
+            int first = from >> shift;
+            int last = Math.max(first + 1, Math.min(to >> shift, rms[level].length));
+            for (int b = first; b < last; b++) {
+                squares += rms[level][b] * rms[level][b];
+            }
+            squares *= 1 << shift;
+            count += (long) (last - first) << shift;
+        }
+        // The tail, less than one block
+        for (int i = Math.max(from, covered); i < to; i++) {
+            squares += samples[i] * samples[i];
+            count++;
+        }
+        return Math.sqrt(squares / count);
+    }
+
+    // Highest level whose blocks are not bigger than samplesPerBlock, -1 if none
+    private int levelFor(long samplesPerBlock) {
+        int level = -1;
+        while (level + 1 < min.length && (1L << (MIN_LEVEL + level + 1)) <= samplesPerBlock) {
+            level++;
+        }
+        return level;
+    }
+
+    // Save the levels, with the size and date of the wav to know if it changed. The file is written in one pass from
+    // a heap buffer, not mapped : a mapping stays alive until it is collected, and on Windows it keeps the file from
+    // being truncated or deleted the next time
+    private void save(File lodFile, File wavFile) {
+        long size = HEADER_SIZE;
+        for (float[] level : min) {
+            size += 4 + 3L * 4 * level.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(lodFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate((int) size);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(wavFile.length());
+            out.putLong(wavFile.lastModified());
+            out.putInt(samples.length);
+            out.putInt(min.length);
+            for (int level = 0; level < min.length; level++) {
+                out.putInt(min[level].length);
+                putFloats(out, min[level]);
+                putFloats(out, max[level]);
+                putFloats(out, rms[level]);
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        catch (IOException e) {
+            // The summary is only a cache, it will be built again next time
+            lodFile.delete();
+        }
+    }
+
+    // null if the file is not a summary of this version of the wav
+    private static WaveformPyramid load(File lodFile, File wavFile, double[] samples) {
+        try (FileChannel channel = FileChannel.open(lodFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer in = ByteBuffer.allocate((int) size);
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    return null;
+                }
+            }
+            in.flip();
+            if (in.getInt() != MAGIC || in.getInt() != VERSION
+                    || in.getLong() != wavFile.length() || in.getLong() != wavFile.lastModified()
+                    || in.getInt() != samples.length) {
+                return null;
+            }
+            int levels = in.getInt();
+            float[][] min = new float[levels][];
+            float[][] max = new float[levels][];
+            float[][] rms = new float[levels][];
+            for (int level = 0; level < levels; level++) {
+                int blocks = in.getInt();
+                if (blocks != samples.length >> (MIN_LEVEL + level) || in.remaining() < 3L * 4 * blocks) {
+                    return null;
+                }
+                min[level] = getFloats(in, blocks);
+                max[level] = getFloats(in, blocks);
+                rms[level] = getFloats(in, blocks);
+            }
+            return new WaveformPyramid(samples, min, max, rms);
+        }
+        catch (IOException | BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    // Bulk copies, much faster than one float at a time
+    private static void putFloats(ByteBuffer out, float[] values) {
+        out.asFloatBuffer().put(values);
+        out.position(out.position() + 4 * values.length);
+    }
+
+    private static float[] getFloats(ByteBuffer in, int count) {
+        float[] values = new float[count];
+        in.asFloatBuffer().get(values);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+}
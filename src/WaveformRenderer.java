@@ -0,0 +1,117 @@
+/**
+ * Draws the waveform around the playback position, and the spectrogram up to it, in its own thread, so the audio
+ * thread never waits for the drawing ( used by Pauvocoder.joue ).
+ *
+ * @apiNote The audio thread publishes positions in a PositionRing. The rendering thread only draws the newest one, the
+ * older ones are counted as late frames. A position that doesn't fit in the ring is counted as a dropped frame.
+ */
+public final class WaveformRenderer implements Runnable {
+
+    private static final int RING_CAPACITY = 64;
+    // Time the rendering thread sleeps when there is nothing to draw
+    private static final long IDLE_SLEEP_MS = 2;
+
+    private final double[] wav;
+    private final int displayWindow;
+    private final PositionRing ring = new PositionRing(RING_CAPACITY);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private volatile long drawn = 0;   // written by the rendering thread
+    private volatile long late = 0;    // written by the rendering thread
+    private long dropped = 0;          // written by the audio thread
+
+    /**
+     * @param wav the played wav
+     * @param displayWindow number of samples shown around the position
+     */
+    public WaveformRenderer(double[] wav, int displayWindow) {
+        this.wav = wav;
+        this.displayWindow = displayWindow;
+        this.thread = new Thread(this, "waveform-renderer");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start the rendering thread
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Called by the audio thread, never blocks
+     *
+     * @param position index of the sample being played
+     */
+    public void publish(int position) {
+        if (!ring.offer(position)) {
+            dropped++;
+        }
+    }
+
+    /**
+     * Draw the last published position and stop the rendering thread
+     */
+    public void stop() {
+        running = false;
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDrawnFrames() {
+        return drawn;
+    }
+
+    public long getLateFrames() {
+        return late;
+    }
+
+    public long getDroppedFrames() {
+        return dropped;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            // Keep only the newest position, the others are already too old to be shown
+            boolean stopping = !running;
+            long newest = -1;
+            long position;
+            while ((position = ring.poll()) >= 0) {
+                if (newest >= 0) {
+                    late++;
+                }
+                newest = position;
+            }
+
+            if (newest >= 0) {
+                draw((int) newest);
+                drawn++;
+            } else if (stopping) {
+                return;
+            } else {
+                try {
+                    Thread.sleep(IDLE_SLEEP_MS);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Show displayWindow samples around the position, straight from the wav without copying it
+    private void draw(int i) {
+        int startIndex = Math.max(0, i - displayWindow / 2);
+        int endIndex = Math.min(wav.length, i + displayWindow / 2);
+
+        WaveformView.get().update(wav, startIndex, endIndex);
+        // Every frame played since the last position, even if some positions were late
+        SpectrogramView.get().advanceTo(wav, i);
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * The window that shows the waveform. The canvas is created once, and each update only redraws the columns that
+ * changed since the previous one ( used by Pauvocoder.displayWaveform ).
+ *
+ * @apiNote The points of the previous update are kept : the first and last points that differ give the dirty part,
+ * which is cleared, redrawn and copied to the screen alone. This only helps when the same part of the wav is shown
+ * again. When the part moves ( joue moves it by a whole window each update ) every point changes, so a different
+ * start, number of samples or of points redraws all at once without comparing the points.
+ */
+public final class WaveformView {
+
+    public static final int WIDTH = 800;
+    public static final int HEIGHT = 400;
+    private static final double Y_SCALE = 1.1;
+    // Pixels added around the dirty part for the width of the pen and the antialiasing
+    private static final double MARGIN_PIXELS = 2;
+
+    private static WaveformView instance = null;
+
+    private final WaveformEnvelope envelope = new WaveformEnvelope(WIDTH);
+    private final double[] lastX = new double[2 * WIDTH];
+    private final double[] lastY = new double[2 * WIDTH];
+    private int lastCount = -1;
+    private int lastFrom = -1;
+    private int lastN = -1;
+
+    private WaveformView() {
+        StdDraw.enableDoubleBuffering();
+        StdDraw.setCanvasSize(WIDTH, HEIGHT);
+        StdDraw.setYscale(-Y_SCALE, Y_SCALE);
+    }
+
+    /**
+     * @return the view, the canvas is created on the first call
+     */
+    public static synchronized WaveformView get() {
+        if (instance == null) {
+            instance = new WaveformView();
+        }
+        return instance;
+    }
+
+    /**
+     * Show wav[from, to)
+     *
+     * @param wav the wav
+     * @param from first sample
+     * @param to end of the part (excluded)
+     */
+    public synchronized void update(double[] wav, int from, int to) {
+        envelope.trace(wav, from, to);
+        redraw(from, to - from);
+    }
+
+    /**
+     * Show samples [from, to) of a summarized wav
+     *
+     * @param pyramid summary of the wav
+     * @param from first sample
+     * @param to end of the part (excluded)
+     */
+    public synchronized void update(WaveformPyramid pyramid, int from, int to) {
+        pyramid.trace(envelope, from, to);
+        redraw(from, to - from);
+    }
+
+    /**
+     * Write the waveform shown to an image ( .png, .jpg ... ), works without display ( StdDraw.isHeadless )
+     *
+     * @param filename the image file
+     */
+    public synchronized void save(String filename) {
+        StdDraw.save(filename);
+    }
+
+    // Draw the envelope of the n samples after from, only where it changed if they are the ones shown
+    private void redraw(int from, int n) {
+        double[] xs = envelope.getX();
+        double[] ys = envelope.getY();
+        int count = envelope.getCount();
+        StdDraw.setXscale(0, Math.max(1, n));
+        double margin = MARGIN_PIXELS * Math.max(1, n) / WIDTH;
+
+        if (from != lastFrom || n != lastN || count != lastCount) {
+            StdDraw.clear(StdDraw.WHITE);
+            StdDraw.setPenColor(StdDraw.BLUE);
+            StdDraw.polyline(xs, ys, count);
+            drawAxes(0, n);
+            StdDraw.show();
+        } else {
+            // First and last points that moved
+            int first = 0;
+            while (first < count && xs[first] == lastX[first] && ys[first] == lastY[first]) {
+                first++;
+            }
+            if (first == count) {
+                return;
+            }
+            int last = count - 1;
+            while (xs[last] == lastX[last] && ys[last] == lastY[last]) {
+                last--;
+            }
+
+            // The segments on both sides of the dirty part touch it, they are cleared and redrawn too
+            int a = Math.max(0, first - 2);
+            int b = Math.min(count - 1, last + 2);
+            double left = a == 0 ? -margin : xs[a];
+            double right = b == count - 1 ? n + margin : xs[b];
+            StdDraw.setPenColor(StdDraw.WHITE);
+            StdDraw.filledRectangle((left + right) / 2, 0, (right - left) / 2, Y_SCALE);
+            StdDraw.setPenColor(StdDraw.BLUE);
+            StdDraw.polyline(xs, ys, Math.max(0, a - 1), Math.min(count, b + 2));
+            drawAxes(left, right);
+            StdDraw.show(left - margin, -Y_SCALE, right + margin, Y_SCALE);
+        }
+
+        System.arraycopy(xs, 0, lastX, 0, count);
+        System.arraycopy(ys, 0, lastY, 0, count);
+        lastCount = count;
+        lastFrom = from;
+        lastN = n;
+    }
+
+    // Axes between x = left and x = right
+    private static void drawAxes(double left, double right) {
+        StdDraw.setPenColor(StdDraw.BLACK);
+        StdDraw.line(left, 0, right, 0); // Axe X
+        if (left <= 0) {
+            StdDraw.line(0, -1, 0, 1); // Axe Y
+        }
+    }
+}